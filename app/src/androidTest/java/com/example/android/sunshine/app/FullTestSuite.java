@@ -17,13 +17,18 @@ package com.example.android.sunshine.app;
 
 import android.test.suitebuilder.TestSuiteBuilder;
 
+import com.example.android.sunshine.app.benchmark.BenchmarkSuite;
+
 import junit.framework.Test;
 import junit.framework.TestSuite;
 
 public class FullTestSuite extends TestSuite {
     public static Test suite() {
         return new TestSuiteBuilder(FullTestSuite.class)
-                .includeAllPackagesUnderHere().build();
+                .includeAllPackagesUnderHere()
+                // Benchmarks are slow and only worth reading over several runs
+                .excludePackages(BenchmarkSuite.class.getPackage().getName())
+                .build();
     }
 
     public FullTestSuite() {
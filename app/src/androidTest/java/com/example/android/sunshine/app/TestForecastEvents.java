@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentValues;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.List;
+
+/*
+    Checks that a stored forecast is kept as it was stored, that it can be read back for its
+    location only, and that a partial forecast is only used once merged into a whole one.
+ */
+public class TestForecastEvents extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ForecastEvents.clear();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // Don't leave a fake forecast for the widgets or later tests to pick up
+        ForecastEvents.clear();
+        super.tearDown();
+    }
+
+    static ContentValues day(long date, int weatherId, double high) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_DATE, date);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, high);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, high - 10);
+        return values;
+    }
+
+    public void testNotifyChanged() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ForecastEvents.ForecastChange change = ForecastEvents.notifyChanged(LOCATION,
+                new ContentValues[] {
+                        day(today - DAY_IN_MILLIS, 800, 20),
+                        day(today, 500, 15),
+                        day(today + DAY_IN_MILLIS, 321, 12)},
+                true);
+
+        assertEquals(LOCATION, change.location);
+        assertEquals(3, change.days.size());
+        assertEquals(15.0, change.days.get(1).high);
+        assertEquals(5.0, change.days.get(1).low);
+        assertEquals(3, change.changedDates.size());
+        assertTrue(change.changedToday());
+
+        List<ForecastEvents.Day> upcoming = change.getUpcomingDays();
+        assertEquals("Error: Yesterday should not be upcoming", 2, upcoming.size());
+        assertEquals(500, upcoming.get(0).weatherId);
+
+        assertSame(change, ForecastEvents.getLatest(LOCATION));
+        assertNull("Error: Latest forecast returned for another location",
+                ForecastEvents.getLatest("elsewhere"));
+    }
+
+    public void testPartialForecast() {
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        ForecastEvents.notifyChanged(LOCATION, new ContentValues[] {day(today, 500, 15)}, false);
+        assertNull("Error: Partial forecast served as the whole one",
+                ForecastEvents.getLatest(LOCATION));
+
+        ForecastEvents.notifyChanged(LOCATION, new ContentValues[] {
+                day(today, 500, 15),
+                day(today + DAY_IN_MILLIS, 321, 12),
+                day(today + 2 * DAY_IN_MILLIS, 800, 18)}, true);
+        ForecastEvents.ForecastChange change = ForecastEvents.notifyChanged(LOCATION,
+                new ContentValues[] {day(today + DAY_IN_MILLIS, 600, -2)}, false);
+
+        assertFalse(change.changedToday());
+        assertTrue(change.changedUpcoming());
+        assertSame(change, ForecastEvents.getLatest(LOCATION));
+        assertEquals("Error: Days missing after a partial update", 3, change.days.size());
+        assertEquals(600, change.days.get(1).weatherId);
+        assertEquals(800, change.days.get(2).weatherId);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.os.Debug;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/*
+    Checks that the cached WeatherFormatter produces the same strings as formatting from scratch,
+    and compares how many allocations a list worth of formatting costs with warm caches against
+    the cold first pass.
+ */
+public class TestWeatherFormatter extends AndroidTestCase {
+    private static final String LOG_TAG = TestWeatherFormatter.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int ITERATIONS = 100;
+
+    private long[] mDates;
+    // The units the user had before the test, null if never set
+    private String mOriginalUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mOriginalUnits = PreferenceManager.getDefaultSharedPreferences(mContext)
+                .getString(mContext.getString(R.string.pref_units_key), null);
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_metric))
+                .commit();
+        AppSettings.refresh(mContext);
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        dayTime = new Time();
+        mDates = new long[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            mDates[i] = dayTime.setJulianDay(julianStartDay + i);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        SharedPreferences.Editor editor =
+                PreferenceManager.getDefaultSharedPreferences(mContext).edit();
+        String key = mContext.getString(R.string.pref_units_key);
+        if (mOriginalUnits == null) {
+            editor.remove(key);
+        } else {
+            editor.putString(key, mOriginalUnits);
+        }
+        editor.commit();
+        AppSettings.refresh(mContext);
+        WeatherFormatter.getInstance(mContext).invalidate();
+        super.tearDown();
+    }
+
+    public void testFormattedValues() {
+        assertEquals("Error: Today doesn't use the today string",
+                mContext.getString(R.string.today), Utility.getDayName(mContext, mDates[0]));
+        assertEquals("Error: Tomorrow doesn't use the tomorrow string",
+                mContext.getString(R.string.tomorrow), Utility.getDayName(mContext, mDates[1]));
+        assertEquals("Error: Day name doesn't match SimpleDateFormat",
+                new SimpleDateFormat("EEEE").format(new Date(mDates[3])),
+                Utility.getDayName(mContext, mDates[3]));
+        assertEquals("Error: Distant day doesn't match SimpleDateFormat",
+                new SimpleDateFormat("EEE MMM dd").format(new Date(mDates[10])),
+                Utility.getFriendlyDayString(mContext, mDates[10], false));
+
+        for (double temperature = -40.5; temperature <= 45; temperature += 0.25) {
+            if (Math.abs(temperature) < 0.5) {
+                // "%1.0f" renders these as "-0", the cache deliberately doesn't
+                continue;
+            }
+            assertEquals("Error: Cached temperature doesn't match for " + temperature,
+                    String.format(mContext.getString(R.string.format_temperature), temperature),
+                    Utility.formatTemperature(mContext, temperature));
+        }
+
+        assertEquals("Error: Wind not formatted as expected",
+                String.format(mContext.getString(R.string.format_wind_kmh), 12.0f, "NE"),
+                Utility.getFormattedWind(mContext, 12.2f, 45f));
+    }
+
+    public void testUnitsChangeInvalidatesCache() {
+        String metric = Utility.formatTemperature(mContext, 20);
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putString(mContext.getString(R.string.pref_units_key),
+                        mContext.getString(R.string.pref_units_imperial))
+                .commit();
+        // The preference listener fires on the main thread, so don't rely on it here
+        AppSettings.refresh(mContext);
+        WeatherFormatter.getInstance(mContext).invalidate();
+        String imperial = Utility.formatTemperature(mContext, 20);
+        assertFalse("Error: Temperature not refreshed after a units change",
+                metric.equals(imperial));
+        assertEquals(String.format(mContext.getString(R.string.format_temperature), 68.0),
+                imperial);
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testWarmCacheAllocations() {
+        WeatherFormatter formatter = WeatherFormatter.getInstance(mContext);
+
+        Debug.startAllocCounting();
+        try {
+            formatter.invalidate();
+            Debug.resetThreadAllocCount();
+            formatForecastList();
+            int coldAllocations = Debug.getThreadAllocCount();
+
+            Debug.resetThreadAllocCount();
+            for (int i = 0; i < ITERATIONS; i++) {
+                formatForecastList();
+            }
+            int warmAllocations = Debug.getThreadAllocCount() / ITERATIONS;
+
+            Log.i(LOG_TAG, "Allocations per forecast list: cold " + coldAllocations
+                    + ", warm " + warmAllocations);
+            assertTrue("Error: Warm formatting allocates " + warmAllocations
+                            + " objects per list, cold " + coldAllocations,
+                    warmAllocations * 10 < coldAllocations);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    private void formatForecastList() {
+        for (int i = 0; i < DAYS; i++) {
+            Utility.getFriendlyDayString(mContext, mDates[i], i == 0);
+            Utility.formatTemperature(mContext, 20 + i);
+            Utility.formatTemperature(mContext, 10 + i);
+            Utility.getFormattedWind(mContext, 5.5f + i, 30f * i);
+        }
+    }
+}
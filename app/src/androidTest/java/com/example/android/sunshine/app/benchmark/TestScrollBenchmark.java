@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.database.MatrixCursor;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.test.ActivityInstrumentationTestCase2;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.ForecastAdapter;
+import com.example.android.sunshine.app.ForecastFragment;
+import com.example.android.sunshine.app.JankMonitor;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+/*
+    Scrolls the forecast list through a long synthetic forecast and reports the frame time
+    percentiles recorded by JankMonitor.  The synthetic rows are swapped straight into the
+    adapter, so a sync finishing during the run will replace them and skew the numbers.
+
+    Not part of FullTestSuite, run it through BenchmarkSuite.
+ */
+public class TestScrollBenchmark extends ActivityInstrumentationTestCase2<MainActivity> {
+    private static final String LOG_TAG = TestScrollBenchmark.class.getSimpleName();
+
+    private static final int DAYS = 365;
+    private static final int PASSES = 3;
+    private static final long SCROLL_TIMEOUT = 30000;
+    private static final int[] CONDITIONS = {200, 300, 500, 600, 701, 800, 801, 803};
+
+    private RecyclerView mRecyclerView;
+
+    public TestScrollBenchmark() {
+        super(MainActivity.class);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRecyclerView = (RecyclerView) getActivity().findViewById(R.id.recyclerview_forecast);
+    }
+
+    public void testScrollLongForecast() throws Throwable {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            Log.i(LOG_TAG, "Frame timing needs Jelly Bean, skipping");
+            return;
+        }
+        final MatrixCursor cursor = createForecast();
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                ((ForecastAdapter) mRecyclerView.getAdapter()).swapCursor(cursor);
+                JankMonitor.getInstance().reset();
+            }
+        });
+        getInstrumentation().waitForIdleSync();
+
+        for (int i = 0; i < PASSES; i++) {
+            scrollTo(DAYS - 1);
+            scrollTo(0);
+        }
+
+        JankMonitor.Summary summary = JankMonitor.getInstance().getSummary();
+        Log.i(LOG_TAG, "Scrolling " + DAYS + " days: " + summary);
+        assertTrue("Error: No frames recorded while scrolling", summary.frames > 0);
+    }
+
+    private void scrollTo(final int position) throws Throwable {
+        runTestOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                mRecyclerView.smoothScrollToPosition(position);
+            }
+        });
+        new PollingCheck(SCROLL_TIMEOUT) {
+            @Override
+            protected boolean check() {
+                return mRecyclerView.getScrollState() == RecyclerView.SCROLL_STATE_IDLE
+                        && null != mRecyclerView.findViewHolderForAdapterPosition(position);
+            }
+        }.run();
+    }
+
+    private static MatrixCursor createForecast() {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS, DAYS);
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        dayTime = new Time();
+        for (int i = 0; i < DAYS; i++) {
+            cursor.newRow()
+                    .add(i + 1)
+                    .add(dayTime.setJulianDay(julianStartDay + i))
+                    .add("Synthetic")
+                    .add(20.0 + i % 10)
+                    .add(10.0 - i % 7)
+                    .add("99705")
+                    .add(CONDITIONS[i % CONDITIONS.length])
+                    .add(64.7488)
+                    .add(-147.353);
+        }
+        return cursor;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.benchmark;
+
+import android.app.Activity;
+import android.app.Instrumentation;
+import android.content.Intent;
+import android.test.InstrumentationTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.SettingsActivity;
+import com.example.android.sunshine.app.StartupTracer;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    Launches MainActivity repeatedly and reports time-to-first-frame percentiles for each kind
+    of start, as recorded by StartupTracer.
+
+    The instrumentation starts a new process for each run, so the first launch in a run is a
+    real cold start and a run only ever gives one cold sample.  Run the suite several times, or
+    use "adb shell am start -W" after "adb shell am force-stop", to get cold start percentiles.
+
+    Not part of FullTestSuite, run it through BenchmarkSuite.
+ */
+public class TestStartupBenchmark extends InstrumentationTestCase {
+    private static final String LOG_TAG = TestStartupBenchmark.class.getSimpleName();
+
+    private static final int ITERATIONS = 10;
+    private static final long TIMEOUT = 10000;
+
+    public void testStartupTimes() throws Exception {
+        Instrumentation instrumentation = getInstrumentation();
+        for (int i = 0; i < ITERATIONS; i++) {
+            // Warm, or cold for the very first launch: a new activity in this process
+            Activity main = launch(MainActivity.class);
+            waitForFirstFrame();
+
+            // Hot: cover the activity with another one and come back to it
+            Activity settings = launch(SettingsActivity.class);
+            settings.finish();
+            instrumentation.waitForIdleSync();
+            waitForFirstFrame();
+
+            main.finish();
+            instrumentation.waitForIdleSync();
+        }
+
+        List<StartupTracer.Record> records = StartupTracer.getRecords();
+        report("cold", records, StartupTracer.START_COLD);
+        int warm = report("warm", records, StartupTracer.START_WARM);
+        int hot = report("hot", records, StartupTracer.START_HOT);
+        assertTrue("Error: No warm starts recorded", warm > 0);
+        assertTrue("Error: No hot starts recorded", hot > 0);
+    }
+
+    private Activity launch(Class<? extends Activity> activityClass) {
+        Intent intent = new Intent(Intent.ACTION_MAIN)
+                .setClassName(getInstrumentation().getTargetContext(), activityClass.getName())
+                .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        return getInstrumentation().startActivitySync(intent);
+    }
+
+    private void waitForFirstFrame() {
+        new PollingCheck(TIMEOUT) {
+            @Override
+            protected boolean check() {
+                List<StartupTracer.Record> records = StartupTracer.getRecords();
+                return !records.isEmpty()
+                        && records.get(records.size() - 1).firstFrameMillis >= 0;
+            }
+        }.run();
+    }
+
+    private static int report(String name, List<StartupTracer.Record> records, int startType) {
+        List<Long> firstFrames = new ArrayList<Long>();
+        List<Long> firstData = new ArrayList<Long>();
+        for (StartupTracer.Record record : records) {
+            if (record.startType != startType) continue;
+            if (record.firstFrameMillis >= 0) firstFrames.add(record.firstFrameMillis);
+            if (record.firstDataMillis >= 0) firstData.add(record.firstDataMillis);
+        }
+        Log.i(LOG_TAG, name + " start, first frame: " + percentiles(firstFrames)
+                + ", first data: " + percentiles(firstData));
+        return firstFrames.size();
+    }
+
+    private static String percentiles(List<Long> samples) {
+        if (samples.isEmpty()) {
+            return "no samples";
+        }
+        Collections.sort(samples);
+        return "n=" + samples.size()
+                + " p50=" + percentile(samples, 50)
+                + " p90=" + percentile(samples, 90)
+                + " max=" + samples.get(samples.size() - 1) + "ms";
+    }
+
+    private static long percentile(List<Long> sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.size()) - 1;
+        return sorted.get(Math.max(0, index));
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.test.AndroidTestCase;
+
+/*
+    Sends bursts of alerts through AlertAggregator, with made up times, and checks how often
+    the notification would alert and what it would list.
+ */
+public class TestAlertAggregator extends AndroidTestCase {
+
+    private static final long START = 1000000;
+
+    private AlertAggregator mAggregator;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mAggregator = new AlertAggregator();
+    }
+
+    public void testBurstAlertsOnce() {
+        AlertAggregator.Post post = mAggregator.add("Hurricane", "94043", START);
+        assertTrue("Error: First alert should alert the user", post.alert);
+
+        post = mAggregator.add("Flood", "94043", START + 1000);
+        assertFalse("Error: Alert within the interval should update quietly", post.alert);
+        post = mAggregator.add("Tornado", "10001", START + 2000);
+        assertFalse(post.alert);
+        assertNull("Error: Repeated alert posted again",
+                mAggregator.add("Flood", "94043", START + 3000));
+
+        assertEquals(2, post.alerts.size());
+        assertEquals("94043", post.alerts.get(0).location);
+        assertEquals(2, post.alerts.get(0).weather.size());
+        assertEquals("Hurricane", post.alerts.get(0).weather.get(0));
+        assertEquals("Flood", post.alerts.get(0).weather.get(1));
+        assertEquals("10001", post.alerts.get(1).location);
+
+        post = mAggregator.add("Blizzard", "10001",
+                START + AlertAggregator.MIN_ALERT_INTERVAL_MILLIS);
+        assertTrue("Error: Alert after the interval should alert again", post.alert);
+    }
+
+    public void testRepeatedAlertIsNotPostedAgain() {
+        mAggregator.add("Hurricane", "94043", START);
+        assertNull(mAggregator.add("Hurricane", "94043",
+                START + AlertAggregator.MIN_ALERT_INTERVAL_MILLIS * 2));
+    }
+
+    public void testOldAlertsExpire() {
+        mAggregator.add("Hurricane", "94043", START);
+
+        AlertAggregator.Post post =
+                mAggregator.add("Tornado", "10001", START + AlertAggregator.WINDOW_MILLIS);
+        assertEquals(1, post.alerts.size());
+        assertEquals("10001", post.alerts.get(0).location);
+    }
+
+    public void testClearedAlertsAreNotShownAgain() {
+        mAggregator.add("Hurricane", "94043", START);
+        mAggregator.clear();
+
+        AlertAggregator.Post post = mAggregator.add("Tornado", "10001", START + 1000);
+        assertEquals("Error: Dismissed alert shown again", 1, post.alerts.size());
+        assertNotNull("Error: Dismissed alert can't be shown again when it comes back",
+                mAggregator.add("Hurricane", "94043", START + 2000));
+    }
+}
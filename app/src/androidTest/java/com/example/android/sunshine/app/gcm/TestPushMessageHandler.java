@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+    Feeds push messages through PushMessageHandler the way GCM would deliver them, with fake
+    actions standing in for the sync framework and the notification manager.
+ */
+public class TestPushMessageHandler extends AndroidTestCase {
+
+    private static final String SENDER_ID = "1234567890";
+    private static final String LOCATION = "94043";
+
+    static class FakeActions implements PushMessageHandler.Actions {
+        final List<String> syncs = new ArrayList<String>();
+        final List<String> alerts = new ArrayList<String>();
+        final List<ForecastPayload> forecasts = new ArrayList<ForecastPayload>();
+        boolean syncPending;
+        boolean syncActive;
+
+        @Override
+        public String getPreferredLocation() {
+            return LOCATION;
+        }
+
+        @Override
+        public boolean isSyncPending() {
+            return syncPending;
+        }
+
+        @Override
+        public boolean isSyncActive() {
+            return syncActive;
+        }
+
+        @Override
+        public void requestSync(String location) {
+            syncs.add(location);
+        }
+
+        @Override
+        public void storeForecast(ForecastPayload forecast) {
+            forecasts.add(forecast);
+        }
+
+        @Override
+        public void showAlert(String weather, String location) {
+            alerts.add(weather + " in " + location);
+        }
+    }
+
+    private FakeActions mActions;
+    private PushMessageHandler mHandler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mActions = new FakeActions();
+        mHandler = new PushMessageHandler(SENDER_ID, mActions);
+    }
+
+    static Bundle message(String json) {
+        Bundle data = new Bundle();
+        data.putString(PushMessageHandler.EXTRA_DATA, json);
+        return data;
+    }
+
+    public void testAlert() {
+        assertEquals(PushMessageHandler.RESULT_ALERT, mHandler.handle(SENDER_ID,
+                message("{\"weather\":\"Hurricane\",\"location\":\"" + LOCATION + "\"}")));
+        assertEquals(1, mActions.alerts.size());
+        assertTrue("Error: Stale marker missing, but a sync was requested",
+                mActions.syncs.isEmpty());
+    }
+
+    public void testIgnoresOtherSendersAndBadMessages() {
+        assertEquals(PushMessageHandler.RESULT_IGNORED, mHandler.handle("someone else",
+                message("{\"stale\":true,\"location\":\"" + LOCATION + "\"}")));
+        assertEquals(PushMessageHandler.RESULT_IGNORED, mHandler.handle(SENDER_ID,
+                message("not json")));
+        assertEquals(PushMessageHandler.RESULT_IGNORED, mHandler.handle(SENDER_ID,
+                message("{\"stale\":true,\"location\":\"elsewhere\"}")));
+        assertTrue(mActions.syncs.isEmpty());
+        assertTrue(mActions.alerts.isEmpty());
+    }
+
+    public void testStaleLocationSyncsOnce() {
+        Bundle stale = message("{\"stale\":true,\"location\":\"" + LOCATION + "\"}");
+        assertEquals(PushMessageHandler.RESULT_SYNC_REQUESTED, mHandler.handle(SENDER_ID, stale));
+        // The same update pushed again right away is covered by the sync already requested
+        assertEquals(PushMessageHandler.RESULT_SYNC_DEDUPLICATED,
+                mHandler.handle(SENDER_ID, stale));
+        assertEquals(1, mActions.syncs.size());
+        assertEquals(LOCATION, mActions.syncs.get(0));
+    }
+
+    public void testForecastInPayload() {
+        assertEquals(PushMessageHandler.RESULT_FORECAST_STORED, mHandler.handle(SENDER_ID,
+                message("{\"location\":\"" + LOCATION + "\",\"forecast\":{\"v\":1,"
+                        + "\"city\":\"Mountain View\",\"lat\":37.42,\"lon\":-122.08,"
+                        + "\"days\":[[800,\"Clear\",21.5,11.2,60,1012.5,3.4,270],"
+                        + "[500,\"Rain\",17,9.5,88,1008,6.1,190]]}}")));
+        assertTrue("Error: Forecast came with the message, but a sync was requested",
+                mActions.syncs.isEmpty());
+        assertEquals(1, mActions.forecasts.size());
+
+        ForecastPayload forecast = mActions.forecasts.get(0);
+        assertEquals(LOCATION, forecast.location);
+        assertEquals("Mountain View", forecast.cityName);
+        assertEquals(2, forecast.days.length);
+        assertEquals(500, (int) forecast.days[1].getAsInteger(
+                WeatherContract.WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals(17.0, forecast.days[1].getAsDouble(
+                WeatherContract.WeatherEntry.COLUMN_MAX_TEMP));
+        assertTrue("Error: Days aren't in order", forecast.days[0].getAsLong(
+                WeatherContract.WeatherEntry.COLUMN_DATE) < forecast.days[1].getAsLong(
+                WeatherContract.WeatherEntry.COLUMN_DATE));
+
+        // The stale marker for the same update doesn't need a fetch anymore
+        assertEquals(PushMessageHandler.RESULT_SYNC_DEDUPLICATED, mHandler.handle(SENDER_ID,
+                message("{\"stale\":true,\"location\":\"" + LOCATION + "\"}")));
+    }
+
+    public void testUnknownPayloadVersionFallsBackToSync() {
+        assertEquals(PushMessageHandler.RESULT_SYNC_REQUESTED, mHandler.handle(SENDER_ID,
+                message("{\"location\":\"" + LOCATION + "\",\"forecast\":{\"v\":99}}")));
+        assertTrue(mActions.forecasts.isEmpty());
+        assertEquals(1, mActions.syncs.size());
+    }
+
+    public void testStaleLocationWhileSyncQueued() {
+        mActions.syncPending = true;
+        assertEquals(PushMessageHandler.RESULT_SYNC_DEDUPLICATED, mHandler.handle(SENDER_ID,
+                message("{\"stale\":true,\"location\":\"" + LOCATION + "\"}")));
+        assertTrue(mActions.syncs.isEmpty());
+    }
+
+    public void testStaleLocationWhileSyncRuns() {
+        Bundle stale = message("{\"stale\":true,\"location\":\"" + LOCATION + "\"}");
+        assertEquals(PushMessageHandler.RESULT_SYNC_REQUESTED, mHandler.handle(SENDER_ID, stale));
+
+        // The requested sync started before the server published this update
+        mActions.syncActive = true;
+        assertEquals("Error: Running sync may have missed the update",
+                PushMessageHandler.RESULT_SYNC_REQUESTED, mHandler.handle(SENDER_ID, stale));
+        assertEquals(2, mActions.syncs.size());
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+/**
+ * Immutable copy of the settings that are read while binding rows, widgets and notifications.
+ *
+ * Reading a preference means looking up the shared preferences and the key's string resource
+ * every time, which adds up when it happens for every row.  Instead a single preference listener
+ * builds a new snapshot whenever anything changes, and readers just take the current one and
+ * use its fields.  A snapshot never changes, so the fields read from one are always consistent
+ * with each other.
+ *
+ * The snapshot is swapped before other preference listeners run only when the change went
+ * through {@link #setLocationStatus(Context, int)}.  Listeners reacting to a change made by the
+ * settings screen should call {@link #refresh(Context)} first, since the order in which
+ * preference listeners are called isn't defined.
+ */
+public final class AppSettings {
+
+    private static volatile AppSettings sCurrent;
+
+    // SharedPreferences only keeps a weak reference to its listeners, so hold on to this one.
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    public final String location;
+    public final boolean isMetric;
+    /** Format of the art urls, with a %s for the condition name */
+    public final String artUrlFormat;
+    public final boolean usingLocalGraphics;
+    public final boolean notificationsEnabled;
+    public final @SunshineSyncAdapter.LocationStatus int locationStatus;
+
+    @SuppressWarnings("ResourceType")
+    private AppSettings(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String metric = context.getString(R.string.pref_units_metric);
+        isMetric = prefs.getString(context.getString(R.string.pref_units_key), metric)
+                .equals(metric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artUrlFormat = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack);
+        usingLocalGraphics = artUrlFormat.equals(sunshineArtPack);
+
+        notificationsEnabled = prefs.getBoolean(
+                context.getString(R.string.pref_enable_notifications_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+
+        locationStatus = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+    }
+
+    private AppSettings(AppSettings other, @SunshineSyncAdapter.LocationStatus int status) {
+        location = other.location;
+        isMetric = other.isMetric;
+        artUrlFormat = other.artUrlFormat;
+        usingLocalGraphics = other.usingLocalGraphics;
+        notificationsEnabled = other.notificationsEnabled;
+        locationStatus = status;
+    }
+
+    /**
+     * @return the current settings.  Safe to call from any thread.
+     */
+    public static AppSettings get(Context context) {
+        AppSettings current = sCurrent;
+        return null != current ? current : refresh(context);
+    }
+
+    /**
+     * Rebuilds the snapshot from the shared preferences right away.
+     *
+     * @return the new snapshot
+     */
+    public static synchronized AppSettings refresh(Context context) {
+        final Context appContext = context.getApplicationContext();
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+        if (null == sListener) {
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences,
+                                                      String key) {
+                    refresh(appContext);
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+        }
+        AppSettings settings = new AppSettings(appContext, prefs);
+        sCurrent = settings;
+        return settings;
+    }
+
+    /**
+     * Changes the location status.  The new status can be read immediately, and is saved to the
+     * shared preferences in the background.  Nothing is written if the status hasn't changed,
+     * so the sync can call this as often as it likes.
+     */
+    public static synchronized void setLocationStatus(Context context,
+                                                      @SunshineSyncAdapter.LocationStatus int status) {
+        AppSettings current = get(context);
+        if (current.locationStatus == status) {
+            return;
+        }
+        sCurrent = new AppSettings(current, status);
+        // apply() only updates the in-memory map before returning, and writes that are queued
+        // up before the disk write starts go out together
+        PreferenceManager.getDefaultSharedPreferences(context).edit()
+                .putInt(context.getString(R.string.pref_location_status_key), status)
+                .apply();
+    }
+}
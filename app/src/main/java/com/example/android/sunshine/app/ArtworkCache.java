@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.util.Log;
+
+import com.bumptech.glide.BitmapRequestBuilder;
+import com.bumptech.glide.DrawableRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Loads the remote art pack for every surface that shows it.
+ *
+ * Glide keys its caches on the target size and transformation, so each surface always requests
+ * its art at one fixed pixel size with the same transformation.  That way the entries
+ * {@link #prefetch(Context, int[])} writes after a sync are exactly the ones the list, the
+ * detail view, the widget and the notification hit later, and nothing has to go to the network
+ * or decode again when a row appears.
+ */
+public class ArtworkCache {
+    private static final String LOG_TAG = ArtworkCache.class.getSimpleName();
+
+    /** Small icon used by future days in the list and by the detail widget */
+    public static final int SURFACE_LIST_ICON = 0;
+    /** Large art used by today's row in the list and by the detail view */
+    public static final int SURFACE_TODAY_ART = 1;
+    /** Large icon of the daily weather notification */
+    public static final int SURFACE_NOTIFICATION = 2;
+
+    // Art is fetched off the sync thread, one image at a time, so it never competes with it
+    private static final ExecutorService sPrefetchExecutor = Executors.newSingleThreadExecutor();
+
+    @SuppressLint("InlinedApi")
+    public static int getWidth(Context context, int surface) {
+        Resources resources = context.getResources();
+        switch (surface) {
+            case SURFACE_TODAY_ART:
+                return resources.getDimensionPixelSize(R.dimen.today_icon);
+            case SURFACE_NOTIFICATION:
+                // On Honeycomb and higher devices, we can retrieve the size of the large icon
+                // Prior to that, we use a fixed size
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                        ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                        : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+            default:
+                return resources.getDimensionPixelSize(R.dimen.list_icon);
+        }
+    }
+
+    @SuppressLint("InlinedApi")
+    public static int getHeight(Context context, int surface) {
+        if (surface == SURFACE_NOTIFICATION) {
+            Resources resources = context.getResources();
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                    ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                    : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+        }
+        // Everything else is square
+        return getWidth(context, surface);
+    }
+
+    /**
+     * Starts a request for art to be shown in an ImageView.  Callers add their own error
+     * drawable and animation, neither of which affects caching.
+     */
+    public static DrawableRequestBuilder<String> load(RequestManager glide, Context context,
+                                                      String url, int surface) {
+        return glide.load(url)
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .override(getWidth(context, surface), getHeight(context, surface))
+                .fitCenter();
+    }
+
+    /**
+     * Starts a request for art to be shown as a Bitmap, in a RemoteViews or a notification.
+     */
+    public static BitmapRequestBuilder<String, Bitmap> loadBitmap(Context context, String url,
+                                                                  int surface) {
+        return Glide.with(context)
+                .load(url)
+                .asBitmap()
+                .diskCacheStrategy(DiskCacheStrategy.ALL)
+                .override(getWidth(context, surface), getHeight(context, surface))
+                .fitCenter();
+    }
+
+    /**
+     * Warms the disk and memory caches with the art for the given weather conditions, at the
+     * sizes every surface uses.  Returns immediately; the work happens on a background thread.
+     *
+     * @param context Context used to resolve the art pack and sizes
+     * @param weatherIds OpenWeatherMap condition ids, duplicates are fine
+     */
+    public static void prefetch(Context context, int[] weatherIds) {
+        final Context appContext = context.getApplicationContext();
+        if (Utility.usingLocalGraphics(appContext)) {
+            return;
+        }
+        // Many days share the same art, only fetch each image once
+        final Set<String> urls = new HashSet<String>();
+        for (int weatherId : weatherIds) {
+            String url = Utility.getArtUrlForWeatherCondition(appContext, weatherId);
+            if (url != null) {
+                urls.add(url);
+            }
+        }
+        sPrefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (String url : urls) {
+                    warm(appContext, url);
+                }
+            }
+        });
+    }
+
+    private static void warm(Context context, String url) {
+        RequestManager glide = Glide.with(context);
+        // The first request downloads the source into the disk cache, the others decode from it
+        warm(load(glide, context, url, SURFACE_LIST_ICON)
+                .into(getWidth(context, SURFACE_LIST_ICON), getHeight(context, SURFACE_LIST_ICON)), url);
+        warm(load(glide, context, url, SURFACE_TODAY_ART)
+                .into(getWidth(context, SURFACE_TODAY_ART), getHeight(context, SURFACE_TODAY_ART)), url);
+        warm(loadBitmap(context, url, SURFACE_LIST_ICON)
+                .into(getWidth(context, SURFACE_LIST_ICON), getHeight(context, SURFACE_LIST_ICON)), url);
+        warm(loadBitmap(context, url, SURFACE_NOTIFICATION)
+                .into(getWidth(context, SURFACE_NOTIFICATION), getHeight(context, SURFACE_NOTIFICATION)), url);
+    }
+
+    private static void warm(FutureTarget<?> target, String url) {
+        try {
+            target.get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.w(LOG_TAG, "Error prefetching " + url, e);
+        } finally {
+            // Releasing the target moves the decoded image into the memory cache
+            Glide.clear(target);
+        }
+    }
+}
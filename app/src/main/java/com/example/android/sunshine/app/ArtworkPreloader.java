@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.resource.drawable.GlideDrawable;
+import com.bumptech.glide.request.animation.GlideAnimation;
+import com.bumptech.glide.request.target.SimpleTarget;
+
+/**
+ * Loads the art of the rows just past the edge of the forecast list into memory as the user
+ * scrolls, so the icons are already there when the rows appear.
+ */
+public class ArtworkPreloader extends RecyclerView.OnScrollListener {
+    // How many rows ahead of the visible ones we preload
+    private static final int PRELOAD_AHEAD = 5;
+
+    private final Context mContext;
+    private final ForecastAdapter mAdapter;
+
+    // Targets are recycled, clearing one releases the image it held back to the memory cache
+    private final PreloadTarget[] mTargets = new PreloadTarget[PRELOAD_AHEAD];
+    private int mNextTarget;
+
+    // Range of positions already preloaded, so small scrolls don't reissue requests
+    private int mPreloadedStart = RecyclerView.NO_POSITION;
+    private int mPreloadedEnd = RecyclerView.NO_POSITION;
+
+    public ArtworkPreloader(Context context, ForecastAdapter adapter) {
+        mContext = context;
+        mAdapter = adapter;
+        for (int i = 0; i < PRELOAD_AHEAD; i++) {
+            mTargets[i] = new PreloadTarget();
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0 || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)
+                || Utility.usingLocalGraphics(mContext)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int start;
+        int end;
+        if (dy > 0) {
+            start = layoutManager.findLastVisibleItemPosition() + 1;
+            end = Math.min(start + PRELOAD_AHEAD, mAdapter.getItemCount());
+        } else {
+            end = layoutManager.findFirstVisibleItemPosition();
+            start = Math.max(0, end - PRELOAD_AHEAD);
+        }
+        for (int position = start; position < end; position++) {
+            if (position >= mPreloadedStart && position < mPreloadedEnd) continue;
+            String url = mAdapter.getArtUrl(position);
+            if (url == null) continue;
+            PreloadTarget target = mTargets[mNextTarget];
+            mNextTarget = (mNextTarget + 1) % PRELOAD_AHEAD;
+            Glide.clear(target);
+            ArtworkCache.load(Glide.with(mContext), mContext, url, mAdapter.getArtSurface(position))
+                    .into(target);
+        }
+        mPreloadedStart = start;
+        mPreloadedEnd = end;
+    }
+
+    private static class PreloadTarget extends SimpleTarget<GlideDrawable> {
+        // The size comes from the request's override, so the default target size is fine
+
+        @Override
+        public void onResourceReady(GlideDrawable resource,
+                                    GlideAnimation<? super GlideDrawable> glideAnimation) {
+            // Nothing to do, the request only exists to fill the cache
+        }
+    }
+}
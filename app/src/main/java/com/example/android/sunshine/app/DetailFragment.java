@@ -44,7 +44,8 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 /**
  * A placeholder fragment containing a simple view.
  */
-public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor> {
+public class DetailFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
+        ForecastRepository.Listener, PresentationSettings.Listener {
 
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
@@ -58,7 +59,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     private static final int DETAIL_LOADER = 0;
 
-    private static final String[] DETAIL_COLUMNS = {
+    static final String[] DETAIL_COLUMNS = {
             WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
             WeatherEntry.COLUMN_DATE,
             WeatherEntry.COLUMN_SHORT_DESC,
@@ -153,8 +154,39 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
+        showForecast();
+        PresentationSettings.addListener(this);
+    }
+
+    @Override
+    public void onDestroyView() {
+        PresentationSettings.removeListener(this);
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onPresentationChanged() {
+        showForecast();
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        ForecastRepository.getInstance(getActivity()).addListener(this);
+    }
+
+    @Override
+    public void onStop() {
+        ForecastRepository.getInstance(getActivity()).removeListener(this);
+        super.onStop();
+    }
+
+    @Override
+    public void onForecastChanged() {
+        if ( null != getView() ) {
+            showForecast();
+        }
     }
 
     void onLocationChanged( String newLocation ) {
@@ -164,8 +196,54 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
             Uri updatedUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(newLocation, date);
             mUri = updatedUri;
+            showForecast();
+        }
+    }
+
+    /**
+     * Shows another day in this fragment, instead of replacing it with a new one.
+     *
+     * @return false if the fragment can't be reused and should be replaced
+     */
+    boolean showDate(Uri uri) {
+        Bundle arguments = getArguments();
+        if ( null == arguments || null == getView() ) {
+            return false;
+        }
+        arguments.putParcelable(DetailFragment.DETAIL_URI, uri);
+        mUri = uri;
+        showForecast();
+        return true;
+    }
+
+    /**
+     * Binds the day from the in-memory {@link ForecastRepository} when it has it, which it
+     * normally does for every day in the list.  Days it doesn't hold are queried directly.
+     */
+    private void showForecast() {
+        if ( null == mUri ) {
+            getLoaderManager().destroyLoader(DETAIL_LOADER);
+            ViewParent vp = getView().getParent();
+            if ( vp instanceof CardView ) {
+                ((View)vp).setVisibility(View.INVISIBLE);
+            }
+            return;
+        }
+        ForecastRepository repository = ForecastRepository.getInstance(getActivity());
+        Cursor cursor = repository.getDetailCursor(mUri);
+        if ( repository.isLoaded(WeatherContract.WeatherEntry.getLocationSettingFromUri(mUri))
+                && null == cursor ) {
             getLoaderManager().restartLoader(DETAIL_LOADER, null, this);
+            return;
+        }
+        // A loader left over from a day the repository didn't hold would otherwise bind that
+        // day over this one when its data next changes
+        getLoaderManager().destroyLoader(DETAIL_LOADER);
+        if ( null != cursor ) {
+            onLoadFinished(null, cursor);
+            cursor.close();
         }
+        // Otherwise the repository is still loading, and will call onForecastChanged
     }
 
     @Override
@@ -204,8 +282,9 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
                 mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
             } else {
                 // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                ArtworkCache.load(Glide.with(this), getActivity(),
+                        Utility.getArtUrlForWeatherCondition(getActivity(), weatherId),
+                        ArtworkCache.SURFACE_TODAY_ART)
                         .error(Utility.getArtResourceForWeatherCondition(weatherId))
                         .crossFade()
                         .into(mIconView);
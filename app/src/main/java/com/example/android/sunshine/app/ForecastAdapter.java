@@ -36,15 +36,17 @@ import com.example.android.sunshine.app.data.WeatherContract;
  * {@link ForecastAdapter} exposes a list of weather forecasts
  * from a {@link android.database.Cursor} to a {@link android.support.v7.widget.RecyclerView}.
  */
-public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder> {
+public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.ForecastAdapterViewHolder>
+        implements ItemChoiceManager.PositionIndex {
 
-    private static final int VIEW_TYPE_TODAY = 0;
-    private static final int VIEW_TYPE_FUTURE_DAY = 1;
+    static final int VIEW_TYPE_TODAY = 0;
+    static final int VIEW_TYPE_FUTURE_DAY = 1;
 
     // Flag to determine if we want to use a separate view for "today".
     private boolean mUseTodayLayout = true;
 
     private Cursor mCursor;
+    private ForecastDiff.Snapshot mSnapshot;
     final private Context mContext;
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
@@ -88,6 +90,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Each day appears at most once in the list, so its date makes a stable id.  This has to
+        // be set before the ItemChoiceManager starts observing us.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -114,7 +119,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
                     break;
                 }
             }
+            long inflateStart = System.nanoTime();
             View view = LayoutInflater.from(viewGroup.getContext()).inflate(layoutId, viewGroup, false);
+            JankMonitor.getInstance().onInflate(System.nanoTime() - inflateStart);
             view.setFocusable(true);
             return new ForecastAdapterViewHolder(view);
         } else {
@@ -124,6 +131,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        long bindStart = System.nanoTime();
         mCursor.moveToPosition(position);
         int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
         int defaultImage;
@@ -142,8 +150,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         if ( Utility.usingLocalGraphics(mContext) ) {
             forecastAdapterViewHolder.mIconView.setImageResource(defaultImage);
         } else {
-            Glide.with(mContext)
-                    .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+            ArtworkCache.load(Glide.with(mContext), mContext,
+                    Utility.getArtUrlForWeatherCondition(mContext, weatherId),
+                    getArtSurface(position))
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -183,6 +192,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        JankMonitor.getInstance().onBind(System.nanoTime() - bindStart);
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -206,6 +216,55 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    /**
+     * @return the remote art url for the row at this position, or null if there is none.
+     */
+    String getArtUrl(int position) {
+        if ( null == mCursor || !mCursor.moveToPosition(position) ) return null;
+        return Utility.getArtUrlForWeatherCondition(mContext,
+                mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID));
+    }
+
+    /**
+     * @return which {@link ArtworkCache} surface the row at this position shows its art on.
+     */
+    int getArtSurface(int position) {
+        return getItemViewType(position) == VIEW_TYPE_TODAY
+                ? ArtworkCache.SURFACE_TODAY_ART : ArtworkCache.SURFACE_LIST_ICON;
+    }
+
+    /**
+     * Finds the row showing the given date.  The index is built by the loader along with the
+     * rest of the snapshot, so this doesn't touch the cursor.
+     *
+     * @return the position of that day, or {@link RecyclerView#NO_POSITION} if it isn't shown
+     */
+    public int getPositionForDate(long date) {
+        if ( null != mSnapshot ) {
+            int position = mSnapshot.indexOf(date);
+            return position < 0 ? RecyclerView.NO_POSITION : position;
+        }
+        // Not loaded through ForecastLoader, fall back to searching the cursor
+        if ( null != mCursor ) {
+            for ( int i = 0; mCursor.moveToPosition(i); i++ ) {
+                if ( mCursor.getLong(ForecastFragment.COL_WEATHER_DATE) == date ) return i;
+            }
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    @Override
+    public int getPositionForId(long id) {
+        // Item ids are the row dates
+        return getPositionForDate(id);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        if ( null == mCursor || !mCursor.moveToPosition(position) ) return RecyclerView.NO_ID;
+        return mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+    }
+
     @Override
     public int getItemCount() {
         if ( null == mCursor ) return 0;
@@ -213,8 +272,18 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     }
 
     public void swapCursor(Cursor newCursor) {
+        ForecastDiff.Snapshot oldSnapshot = mSnapshot;
+        ForecastDiff diff = newCursor instanceof ForecastLoader.ForecastCursor
+                ? ((ForecastLoader.ForecastCursor) newCursor).getDiff() : null;
         mCursor = newCursor;
-        notifyDataSetChanged();
+        mSnapshot = null != diff ? diff.getNewSnapshot() : null;
+        // The diff was computed against whatever the loader delivered last.  Only use it if that
+        // is also what we're currently showing.
+        if ( null != diff && null != oldSnapshot && diff.getOldSnapshot() == oldSnapshot ) {
+            diff.dispatchUpdatesTo(this);
+        } else {
+            notifyDataSetChanged();
+        }
         mEmptyView.setVisibility(getItemCount() == 0 ? View.VISIBLE : View.GONE);
     }
 
@@ -222,6 +291,20 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return mCursor;
     }
 
+    /**
+     * Rebinds every row with the data we already have, after the units or art pack changed.
+     */
+    public void onPresentationChanged() {
+        notifyItemRangeChanged(0, getItemCount());
+    }
+
+    /**
+     * @return the snapshot of what the adapter is showing, or null if it has no diffable data.
+     */
+    ForecastDiff.Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
     public void selectView(RecyclerView.ViewHolder viewHolder) {
         if ( viewHolder instanceof ForecastAdapterViewHolder ) {
             ForecastAdapterViewHolder vfh = (ForecastAdapterViewHolder)viewHolder;
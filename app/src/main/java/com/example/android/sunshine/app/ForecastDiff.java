@@ -0,0 +1,267 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.v7.widget.RecyclerView;
+import android.text.format.Time;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Works out the minimal set of {@link RecyclerView} notifications needed to go from one forecast
+ * list to the next, so that a sync that only changes tomorrow's high temperature rebinds a
+ * single row instead of the whole list.
+ *
+ * Rows are matched by date and compared by a hash of the columns the list displays.  Anything
+ * that changes how every row renders (another location, other units or art pack, or the day
+ * rolling over) falls back to a full refresh.
+ */
+public class ForecastDiff {
+
+    private static final int OP_REMOVE = 0;
+    private static final int OP_INSERT = 1;
+    private static final int OP_MOVE = 2;
+    private static final int OP_CHANGE = 3;
+
+    /**
+     * The identity and content of every row of a forecast list, plus the display settings it
+     * was rendered with.
+     */
+    public static final class Snapshot {
+        final String mLocation;
+        final int mTodayJulianDay;
+        final boolean mIsMetric;
+        final String mArtPack;
+        final long[] mDates;
+        final int[] mHashes;
+        // Dates in ascending order along with the position of each, for binary searching
+        private final long[] mSortedDates;
+        private final int[] mSortedPositions;
+
+        private Snapshot(String location, int todayJulianDay, boolean isMetric, String artPack,
+                         long[] dates, int[] hashes) {
+            mLocation = location;
+            mTodayJulianDay = todayJulianDay;
+            mIsMetric = isMetric;
+            mArtPack = artPack;
+            mDates = dates;
+            mHashes = hashes;
+
+            // The list is normally queried in date order already, in which case this is a copy
+            mSortedDates = Arrays.copyOf(dates, dates.length);
+            mSortedPositions = new int[dates.length];
+            Arrays.sort(mSortedDates);
+            // Dates are unique within a location, so each one has exactly one slot
+            for (int i = 0; i < dates.length; i++) {
+                mSortedPositions[Arrays.binarySearch(mSortedDates, dates[i])] = i;
+            }
+        }
+
+        /**
+         * Reads a snapshot out of a cursor using the {@link ForecastFragment} projection.  This
+         * walks the whole cursor, so call it off the UI thread.
+         */
+        public static Snapshot from(Context context, String location, Cursor cursor) {
+            int count = cursor.getCount();
+            long[] dates = new long[count];
+            int[] hashes = new int[count];
+            for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+                dates[i] = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+                hashes[i] = hashRow(cursor);
+            }
+            cursor.moveToPosition(-1);
+
+            long now = System.currentTimeMillis();
+            int todayJulianDay = Time.getJulianDay(now,
+                    TimeZone.getDefault().getOffset(now) / 1000);
+            String artPack = Utility.usingLocalGraphics(context)
+                    ? null : Utility.getArtUrlForWeatherCondition(context, 800);
+            return new Snapshot(location, todayJulianDay, Utility.isMetric(context), artPack,
+                    dates, hashes);
+        }
+
+        public int size() {
+            return mDates.length;
+        }
+
+        boolean rendersLike(Snapshot other) {
+            return mTodayJulianDay == other.mTodayJulianDay
+                    && mIsMetric == other.mIsMetric
+                    && equals(mLocation, other.mLocation)
+                    && equals(mArtPack, other.mArtPack);
+        }
+
+        /**
+         * @return the position of the row for this date, or -1 if there is none.
+         */
+        public int indexOf(long date) {
+            int index = Arrays.binarySearch(mSortedDates, date);
+            return index < 0 ? -1 : mSortedPositions[index];
+        }
+
+        private static int hashRow(Cursor cursor) {
+            int hash = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            hash = 31 * hash + hashDouble(cursor.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP));
+            hash = 31 * hash + hashDouble(cursor.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP));
+            String description = cursor.getString(ForecastFragment.COL_WEATHER_DESC);
+            hash = 31 * hash + (description == null ? 0 : description.hashCode());
+            return hash;
+        }
+
+        private static int hashDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            return (int) (bits ^ (bits >>> 32));
+        }
+
+        private static boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private final Snapshot mOldSnapshot;
+    private final Snapshot mNewSnapshot;
+    private final boolean mFullRefresh;
+    // Packed (op, from, to) triples, in dispatch order
+    private int[] mOps = new int[0];
+    private int mOpCount;
+
+    private ForecastDiff(Snapshot oldSnapshot, Snapshot newSnapshot, boolean fullRefresh) {
+        mOldSnapshot = oldSnapshot;
+        mNewSnapshot = newSnapshot;
+        mFullRefresh = fullRefresh;
+    }
+
+    public Snapshot getOldSnapshot() {
+        return mOldSnapshot;
+    }
+
+    public Snapshot getNewSnapshot() {
+        return mNewSnapshot;
+    }
+
+    /**
+     * @return true if the adapter needs no updates at all.
+     */
+    public boolean isEmpty() {
+        return !mFullRefresh && mOpCount == 0;
+    }
+
+    /**
+     * Computes the updates needed to turn {@code oldSnapshot} into {@code newSnapshot}.
+     *
+     * @param oldSnapshot The list currently displayed, or null if nothing is
+     * @param newSnapshot The list about to be displayed
+     */
+    public static ForecastDiff compute(Snapshot oldSnapshot, Snapshot newSnapshot) {
+        if (oldSnapshot == null || !oldSnapshot.rendersLike(newSnapshot)) {
+            return new ForecastDiff(oldSnapshot, newSnapshot, true);
+        }
+        ForecastDiff diff = new ForecastDiff(oldSnapshot, newSnapshot, false);
+
+        // Work on a copy of the old dates, applying each structural change as we record it so
+        // that positions always refer to the state the RecyclerView will be in at that point.
+        long[] working = Arrays.copyOf(oldSnapshot.mDates,
+                oldSnapshot.size() + newSnapshot.size());
+        int size = oldSnapshot.size();
+
+        // Removals, back to front so earlier positions stay valid
+        for (int i = size - 1; i >= 0; i--) {
+            if (newSnapshot.indexOf(working[i]) < 0) {
+                diff.addOp(OP_REMOVE, i, i);
+                System.arraycopy(working, i + 1, working, i, size - i - 1);
+                size--;
+            }
+        }
+
+        // Insertions and moves, front to back
+        for (int i = 0; i < newSnapshot.size(); i++) {
+            long date = newSnapshot.mDates[i];
+            if (i < size && working[i] == date) continue;
+
+            int from = -1;
+            for (int j = i + 1; j < size; j++) {
+                if (working[j] == date) {
+                    from = j;
+                    break;
+                }
+            }
+            if (from >= 0) {
+                diff.addOp(OP_MOVE, from, i);
+                System.arraycopy(working, i, working, i + 1, from - i);
+            } else {
+                diff.addOp(OP_INSERT, i, i);
+                System.arraycopy(working, i, working, i + 1, size - i);
+                size++;
+            }
+            working[i] = date;
+        }
+
+        // Content changes, at their final positions
+        for (int i = 0; i < newSnapshot.size(); i++) {
+            int oldIndex = oldSnapshot.indexOf(newSnapshot.mDates[i]);
+            if (oldIndex < 0) continue;
+            // The first row may use the "today" layout, so rebind it if another day took its
+            // place even when the day's own data didn't change.
+            boolean newFirstRow = i == 0 && oldIndex != 0;
+            if (newFirstRow || oldSnapshot.mHashes[oldIndex] != newSnapshot.mHashes[i]) {
+                diff.addOp(OP_CHANGE, i, i);
+            }
+        }
+        return diff;
+    }
+
+    /**
+     * Sends the computed updates to the adapter.  The adapter must already be backed by the
+     * data the new snapshot was taken from.
+     */
+    public void dispatchUpdatesTo(RecyclerView.Adapter adapter) {
+        if (mFullRefresh) {
+            adapter.notifyDataSetChanged();
+            return;
+        }
+        for (int i = 0; i < mOpCount; i++) {
+            int from = mOps[3 * i + 1];
+            int to = mOps[3 * i + 2];
+            switch (mOps[3 * i]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRemoved(from);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemInserted(to);
+                    break;
+                case OP_MOVE:
+                    adapter.notifyItemMoved(from, to);
+                    break;
+                case OP_CHANGE:
+                    adapter.notifyItemChanged(to);
+                    break;
+            }
+        }
+    }
+
+    private void addOp(int op, int from, int to) {
+        if (3 * (mOpCount + 1) > mOps.length) {
+            mOps = Arrays.copyOf(mOps, Math.max(12, 2 * mOps.length));
+        }
+        mOps[3 * mOpCount] = op;
+        mOps[3 * mOpCount + 1] = from;
+        mOps[3 * mOpCount + 2] = to;
+        mOpCount++;
+    }
+}
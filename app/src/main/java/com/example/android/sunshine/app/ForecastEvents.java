@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentValues;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Describes each forecast stored in this process as a {@link ForecastChange}, which the sync
+ * hands to what shows the forecast outside the app's own screens, such as the widgets and the
+ * Muzei source.  They use its dates to skip updates that don't concern them, and read the days
+ * from here instead of querying the content provider for what was just written.  Views inside
+ * the app still follow the provider through their loaders.
+ *
+ * A sync stores the whole forecast, but a push may only carry a few days.  Those are merged
+ * into the last whole forecast when there is one, and otherwise aren't enough to show from.
+ */
+public class ForecastEvents {
+
+    /**
+     * One day of a stored forecast, in the units it is stored in.
+     */
+    public static final class Day {
+        public final long date;
+        public final int weatherId;
+        public final String description;
+        public final double high;
+        public final double low;
+
+        public Day(long date, int weatherId, String description, double high, double low) {
+            this.date = date;
+            this.weatherId = weatherId;
+            this.description = description;
+            this.high = high;
+            this.low = low;
+        }
+    }
+
+    /**
+     * A forecast that has just been stored for a location.  Never modified.
+     */
+    public static final class ForecastChange {
+        public final String location;
+        /** Every day known for the location once the change was stored, in date order */
+        public final List<Day> days;
+        /** The dates the change wrote, the other days are as they were */
+        public final Set<Long> changedDates;
+        /** Whether {@link #days} is the whole forecast the provider holds for the location */
+        public final boolean complete;
+
+        ForecastChange(String location, List<Day> days, Set<Long> changedDates,
+                       boolean complete) {
+            this.location = location;
+            this.days = days;
+            this.changedDates = changedDates;
+            this.complete = complete;
+        }
+
+        /**
+         * @return the days from today onwards, the ones a query for the location would return
+         */
+        public List<Day> getUpcomingDays() {
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            for (int i = 0; i < days.size(); i++) {
+                if (days.get(i).date >= today) {
+                    return days.subList(i, days.size());
+                }
+            }
+            return Collections.emptyList();
+        }
+
+        /**
+         * @return true if the change wrote today's forecast
+         */
+        public boolean changedToday() {
+            return changedDates.contains(
+                    WeatherContract.normalizeDate(System.currentTimeMillis()));
+        }
+
+        /**
+         * @return true if the change wrote any day from today onwards
+         */
+        public boolean changedUpcoming() {
+            long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+            for (long date : changedDates) {
+                if (date >= today) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static volatile ForecastChange sLatest;
+
+    /**
+     * @return the whole forecast last stored for this location since the process started, or
+     * null if it isn't all known here and the provider has to be queried
+     */
+    public static ForecastChange getLatest(String location) {
+        ForecastChange latest = sLatest;
+        return latest != null && latest.complete && latest.location.equals(location)
+                ? latest : null;
+    }
+
+    /**
+     * Call once a forecast has been written to the provider, and pass the change on to what
+     * shows it.
+     *
+     * @param days The rows that were stored, in date order
+     * @param complete true if these are all the days the provider holds for the location,
+     *                 false if they replace only some of them
+     */
+    public static synchronized ForecastChange notifyChanged(String location,
+                                                            ContentValues[] days,
+                                                            boolean complete) {
+        TreeMap<Long, Day> merged = new TreeMap<Long, Day>();
+        ForecastChange previous = sLatest;
+        boolean mergeable = !complete && previous != null && previous.complete
+                && previous.location.equals(location);
+        if (mergeable) {
+            for (Day day : previous.days) {
+                merged.put(day.date, day);
+            }
+        }
+        Set<Long> changedDates = new TreeSet<Long>();
+        for (ContentValues values : days) {
+            Day day = new Day(values.getAsLong(WeatherEntry.COLUMN_DATE),
+                    values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID),
+                    values.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    values.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP));
+            merged.put(day.date, day);
+            changedDates.add(day.date);
+        }
+        ForecastChange change = new ForecastChange(location,
+                Collections.unmodifiableList(new ArrayList<Day>(merged.values())),
+                Collections.unmodifiableSet(changedDates), complete || mergeable);
+        sLatest = change;
+        return change;
+    }
+
+    /**
+     * Forgets the latest forecast, so consumers query the provider again.  For tests.
+     */
+    static void clear() {
+        sLatest = null;
+    }
+}
@@ -28,7 +28,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -51,7 +50,8 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
-public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>, SharedPreferences.OnSharedPreferenceChangeListener {
+public class ForecastFragment extends Fragment implements LoaderManager.LoaderCallbacks<Cursor>,
+        SharedPreferences.OnSharedPreferenceChangeListener, PresentationSettings.Listener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -59,13 +59,15 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    // True until the loader has delivered, while the list shows ForecastSnapshotStore rows
+    private boolean mShowingPersistedForecast;
 
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    public static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -128,6 +130,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.unregisterOnSharedPreferenceChangeListener(this);
+        // Keep the persisted forecast in step with what the user last saw
+        if ( !mShowingPersistedForecast && null != mForecastAdapter.getCursor() ) {
+            ForecastSnapshotStore.getInstance(getActivity())
+                    .saveAsync(getActivity(), Utility.getPreferredLocation(getActivity()));
+        }
         super.onPause();
     }
 
@@ -175,8 +182,23 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // Get a reference to the RecyclerView, and attach this adapter to it.
         mRecyclerView = (RecyclerView) rootView.findViewById(R.id.recyclerview_forecast);
 
-        // Set the layout manager
-        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        // Set the layout manager, timing its layout passes for the JankMonitor
+        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()) {
+            @Override
+            public void onLayoutChildren(RecyclerView.Recycler recycler, RecyclerView.State state) {
+                long start = System.nanoTime();
+                super.onLayoutChildren(recycler, state);
+                JankMonitor.getInstance().onLayout(System.nanoTime() - start);
+            }
+
+            @Override
+            public int scrollVerticallyBy(int dy, RecyclerView.Recycler recycler, RecyclerView.State state) {
+                long start = System.nanoTime();
+                int scrolled = super.scrollVerticallyBy(dy, recycler, state);
+                JankMonitor.getInstance().onLayout(System.nanoTime() - start);
+                return scrolled;
+            }
+        });
         View emptyView = rootView.findViewById(R.id.recyclerview_forecast_empty);
 
         // use this setting to improve performance if you know that changes
@@ -199,6 +221,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
 
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
+        mRecyclerView.addOnScrollListener(new ArtworkPreloader(getActivity(), mForecastAdapter));
+        mRecyclerView.addOnScrollListener(JankMonitor.getInstance());
 
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
@@ -247,6 +271,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         }
 
         mForecastAdapter.setUseTodayLayout(mUseTodayLayout);
+        // Registered for as long as the list exists, so it is up to date when we come back
+        // from the settings
+        PresentationSettings.addListener(this);
 
         return rootView;
     }
@@ -259,10 +286,32 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if ( mHoldForTransition ) {
             getActivity().supportPostponeEnterTransition();
         }
+        // By now the activity has told us which layout the first row uses
+        ForecastViewPrewarmer.prewarm(mRecyclerView, mForecastAdapter, mUseTodayLayout);
+        // On a fresh start, draw the persisted forecast right away rather than waiting for the
+        // database.  After a configuration change the loader already has its data.
+        if ( null == savedInstanceState ) {
+            showPersistedForecast();
+        }
         getLoaderManager().initLoader(FORECAST_LOADER, null, this);
         super.onActivityCreated(savedInstanceState);
     }
 
+    private void showPersistedForecast() {
+        StartupTracer.beginPhase(StartupTracer.PHASE_PERSISTED_FORECAST);
+        String locationSetting = Utility.getPreferredLocation(getActivity());
+        Cursor cursor = ForecastSnapshotStore.getInstance(getActivity())
+                .getForecastCursor(locationSetting);
+        if ( null != cursor ) {
+            mForecastAdapter.swapCursor(ForecastLoader.wrap(getActivity(), locationSetting, cursor));
+            mShowingPersistedForecast = true;
+            updateEmptyView();
+            scheduleInitialSelection();
+            StartupTracer.onFirstData();
+        }
+        StartupTracer.endPhase();
+    }
+
     // since we read the location when we create the loader, all we need to do is restart things
     void onLocationChanged() {
         getLoaderManager().restartLoader(FORECAST_LOADER, null, this);
@@ -316,64 +365,80 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 locationSetting, System.currentTimeMillis());
 
-        return new CursorLoader(getActivity(),
+        return new ForecastLoader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
                 null,
                 null,
-                sortOrder);
+                sortOrder,
+                mForecastAdapter.getSnapshot());
     }
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        Cursor previous = mShowingPersistedForecast ? mForecastAdapter.getCursor() : null;
+        boolean unchanged = mShowingPersistedForecast
+                && data instanceof ForecastLoader.ForecastCursor
+                && ((ForecastLoader.ForecastCursor) data).getDiff().isEmpty();
+        mShowingPersistedForecast = false;
         mForecastAdapter.swapCursor(data);
+        StartupTracer.onFirstData();
+        // The persisted rows aren't owned by the loader, so nobody else will close them
+        if ( null != previous ) previous.close();
         updateEmptyView();
         if ( data.getCount() == 0 ) {
             getActivity().supportStartPostponedEnterTransition();
-        } else {
-            mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
-                @Override
-                public boolean onPreDraw() {
-                    // Since we know we're going to get items, we keep the listener around until
-                    // we see Children.
-                    if (mRecyclerView.getChildCount() > 0) {
-                        mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
-                        int position = mForecastAdapter.getSelectedItemPosition();
-                        if (position == RecyclerView.NO_POSITION &&
-                                -1 != mInitialSelectedDate) {
-                            Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
-                            }
-                        }
-                        if (position == RecyclerView.NO_POSITION) position = 0;
-                        // If we don't need to restart the loader, and there's a desired position to restore
-                        // to, do so now.
-                        mRecyclerView.smoothScrollToPosition(position);
-                        RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForAdapterPosition(position);
-                        if (null != vh && mAutoSelectView) {
-                            mForecastAdapter.selectView(vh);
-                        }
-                        if ( mHoldForTransition ) {
-                            getActivity().supportStartPostponedEnterTransition();
-                        }
-                        return true;
-                    }
-                    return false;
-                }
-            });
+        } else if ( !unchanged ) {
+            // If the persisted forecast was already right, the selection has been made
+            scheduleInitialSelection();
         }
 
     }
 
+    private void scheduleInitialSelection() {
+        mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                // Since we know we're going to get items, we keep the listener around until
+                // we see Children.
+                if (mRecyclerView.getChildCount() > 0) {
+                    mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                    int position = mForecastAdapter.getSelectedItemPosition();
+                    if (position == RecyclerView.NO_POSITION &&
+                            -1 != mInitialSelectedDate) {
+                        position = mForecastAdapter.getPositionForDate(mInitialSelectedDate);
+                    }
+                    if (position == RecyclerView.NO_POSITION) position = 0;
+                    // If we don't need to restart the loader, and there's a desired position to restore
+                    // to, do so now.
+                    mRecyclerView.smoothScrollToPosition(position);
+                    RecyclerView.ViewHolder vh = mRecyclerView.findViewHolderForAdapterPosition(position);
+                    if (null != vh && mAutoSelectView) {
+                        mForecastAdapter.selectView(vh);
+                    }
+                    if ( mHoldForTransition ) {
+                        getActivity().supportStartPostponedEnterTransition();
+                    }
+                    return true;
+                }
+                return false;
+            }
+        });
+    }
 
 
+
+    @Override
+    public void onDestroyView() {
+        PresentationSettings.removeListener(this);
+        super.onDestroyView();
+    }
+
+    @Override
+    public void onPresentationChanged() {
+        mForecastAdapter.onPresentationChanged();
+    }
+
     @Override
     public void onDestroy() {
         super.onDestroy();
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * {@link CursorLoader} for the forecast list that also diffs each new result against the
+ * previous one on the loader thread, so {@link ForecastAdapter#swapCursor(Cursor)} only has to
+ * dispatch the resulting notifications.
+ */
+public class ForecastLoader extends CursorLoader {
+
+    /**
+     * The loaded cursor, along with how it differs from the previously loaded one.
+     */
+    public static class ForecastCursor extends CursorWrapper {
+        private final ForecastDiff mDiff;
+
+        ForecastCursor(Cursor cursor, ForecastDiff diff) {
+            super(cursor);
+            mDiff = diff;
+        }
+
+        public ForecastDiff getDiff() {
+            return mDiff;
+        }
+    }
+
+    // Only touched from loadInBackground, which the loader never runs concurrently
+    private ForecastDiff.Snapshot mLastSnapshot;
+
+    /**
+     * @param previous What the adapter is already showing, if it wasn't loaded by this loader.
+     *                 The first load is diffed against it instead of refreshing everything.
+     */
+    public ForecastLoader(Context context, Uri uri, String[] projection, String selection,
+                          String[] selectionArgs, String sortOrder, ForecastDiff.Snapshot previous) {
+        super(context, uri, projection, selection, selectionArgs, sortOrder);
+        mLastSnapshot = previous;
+    }
+
+    /**
+     * Wraps a cursor that didn't come from a loader, such as the persisted
+     * {@link ForecastSnapshotStore} rows, so the adapter can diff later loads against it.
+     */
+    public static ForecastCursor wrap(Context context, String location, Cursor cursor) {
+        ForecastDiff.Snapshot snapshot = ForecastDiff.Snapshot.from(context, location, cursor);
+        return new ForecastCursor(cursor, ForecastDiff.compute(null, snapshot));
+    }
+
+    @Override
+    public Cursor loadInBackground() {
+        Cursor cursor = super.loadInBackground();
+        if (cursor == null) {
+            return null;
+        }
+        String location = WeatherContract.WeatherEntry.getLocationSettingFromUri(getUri());
+        ForecastDiff.Snapshot snapshot = ForecastDiff.Snapshot.from(getContext(), location, cursor);
+        ForecastDiff diff = ForecastDiff.compute(mLastSnapshot, snapshot);
+        mLastSnapshot = snapshot;
+        return new ForecastCursor(cursor, diff);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide, in-memory copy of the forecast for the preferred location.
+ *
+ * Detail views read their day from here synchronously instead of each running their own query
+ * for a row the list has already loaded, which makes switching days in the two-pane layout
+ * immediate.  A single observer on the weather table reloads the whole forecast in the
+ * background whenever it changes and then tells the registered listeners.
+ *
+ * All methods must be called from the main thread.
+ */
+public class ForecastRepository {
+
+    public interface Listener {
+        /**
+         * Called on the main thread after the forecast has been reloaded.
+         */
+        void onForecastChanged();
+    }
+
+    private static ForecastRepository sInstance;
+
+    private final Context mContext;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    // Loads run one at a time, off the main thread
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final List<Listener> mListeners = new ArrayList<Listener>();
+
+    private ForecastRows mRows;
+    // Location being loaded, and whether another load is needed once it finishes
+    private String mLoadingLocation;
+    private boolean mReloadPending;
+
+    private ForecastRepository(Context context) {
+        mContext = context;
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                new ContentObserver(mHandler) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        if (null != mLoadingLocation) {
+                            // The load that's running may have missed this change
+                            mReloadPending = true;
+                        } else if (null != mRows) {
+                            load(mRows.location);
+                        }
+                    }
+                });
+    }
+
+    public static ForecastRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    public void addListener(Listener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * @return true if the forecast for this location is in memory, so a null result from
+     * {@link #getDetailCursor(Uri)} means the day really isn't there.
+     */
+    public boolean isLoaded(String location) {
+        return null != mRows && mRows.location.equals(location);
+    }
+
+    /**
+     * Returns the row for a day, laid out like the cursor {@link DetailFragment} loads.  If
+     * that location isn't in memory yet, this starts loading it and returns the persisted row
+     * from {@link ForecastSnapshotStore} if there is one.  Art for the neighbouring days is
+     * fetched in the background, since those are the ones most likely to be shown next.
+     *
+     * @param weatherUri A weather/location/date uri
+     * @return the row, or null if it isn't available yet
+     */
+    public Cursor getDetailCursor(Uri weatherUri) {
+        String location = WeatherEntry.getLocationSettingFromUri(weatherUri);
+        long date = WeatherEntry.getDateFromUri(weatherUri);
+        if (!isLoaded(location)) {
+            load(location);
+            return ForecastSnapshotStore.getInstance(mContext).getDetailCursor(weatherUri);
+        }
+        int index = mRows.indexOf(date);
+        if (index >= 0) {
+            prefetchAdjacent(index);
+        }
+        return mRows.toDetailCursor(date);
+    }
+
+    private void prefetchAdjacent(int index) {
+        int before = Math.max(0, index - 1);
+        int after = Math.min(mRows.size() - 1, index + 1);
+        ArtworkCache.prefetch(mContext,
+                new int[] {mRows.conditionIds[before], mRows.conditionIds[after]});
+    }
+
+    private void load(final String location) {
+        if (null != mLoadingLocation) {
+            if (!mLoadingLocation.equals(location)) {
+                // The load that's running is for another location, go again once it's done
+                mReloadPending = true;
+                mLoadingLocation = location;
+            }
+            return;
+        }
+        mLoadingLocation = location;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                final ForecastRows rows = ForecastRows.query(mContext, location);
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onLoaded(rows);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onLoaded(ForecastRows rows) {
+        String nextLocation = mLoadingLocation;
+        mLoadingLocation = null;
+        if (mReloadPending) {
+            mReloadPending = false;
+            load(nextLocation);
+            return;
+        }
+        // Listeners still hear about a failed query, and fall back to querying the day themselves
+        mRows = null != rows ? rows : ForecastRows.empty(nextLocation);
+        for (Listener listener : new ArrayList<Listener>(mListeners)) {
+            listener.onForecastChanged();
+        }
+    }
+}
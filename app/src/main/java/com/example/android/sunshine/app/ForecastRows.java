@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * An immutable copy of the upcoming forecast for one location, with everything the list and
+ * detail views show.  Rows are stored column by column in primitive arrays, in date order, and
+ * can be handed out as cursors laid out like the ones {@link ForecastFragment} and
+ * {@link DetailFragment} load.
+ */
+class ForecastRows {
+
+    private static final String[] COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final int COL_WEATHER_ID = 0;
+    private static final int COL_WEATHER_DATE = 1;
+    private static final int COL_WEATHER_DESC = 2;
+    private static final int COL_WEATHER_MAX_TEMP = 3;
+    private static final int COL_WEATHER_MIN_TEMP = 4;
+    private static final int COL_WEATHER_HUMIDITY = 5;
+    private static final int COL_WEATHER_PRESSURE = 6;
+    private static final int COL_WEATHER_WIND_SPEED = 7;
+    private static final int COL_WEATHER_DEGREES = 8;
+    private static final int COL_WEATHER_CONDITION_ID = 9;
+    private static final int COL_COORD_LAT = 10;
+    private static final int COL_COORD_LONG = 11;
+
+    final String location;
+    final double coordLat;
+    final double coordLong;
+    final long[] ids;
+    final long[] dates;
+    final String[] descriptions;
+    final double[] maxTemps;
+    final double[] minTemps;
+    final double[] humidities;
+    final double[] pressures;
+    final double[] windSpeeds;
+    final double[] degrees;
+    final int[] conditionIds;
+
+    private ForecastRows(String location, double coordLat, double coordLong, int count) {
+        this.location = location;
+        this.coordLat = coordLat;
+        this.coordLong = coordLong;
+        ids = new long[count];
+        dates = new long[count];
+        descriptions = new String[count];
+        maxTemps = new double[count];
+        minTemps = new double[count];
+        humidities = new double[count];
+        pressures = new double[count];
+        windSpeeds = new double[count];
+        degrees = new double[count];
+        conditionIds = new int[count];
+    }
+
+    /**
+     * @return a forecast with no days, for when the location's days couldn't be read
+     */
+    static ForecastRows empty(String location) {
+        return new ForecastRows(location, 0, 0, 0);
+    }
+
+    int size() {
+        return dates.length;
+    }
+
+    /**
+     * @return the position of the row for this date, or -1 if there is none.
+     */
+    int indexOf(long date) {
+        for (int i = 0; i < dates.length; i++) {
+            if (dates[i] == date) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads the forecast for a location from the provider, from today onwards.  Don't call this
+     * from the UI thread.
+     *
+     * @return the rows, or null if the query failed
+     */
+    static ForecastRows query(Context context, String location) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(location, System.currentTimeMillis()),
+                COLUMNS,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            // Every row has the same location, and so the same coordinates
+            boolean hasRows = cursor.moveToFirst();
+            ForecastRows rows = new ForecastRows(location,
+                    hasRows ? cursor.getDouble(COL_COORD_LAT) : 0,
+                    hasRows ? cursor.getDouble(COL_COORD_LONG) : 0,
+                    cursor.getCount());
+            for (int i = 0; cursor.moveToPosition(i); i++) {
+                rows.ids[i] = cursor.getLong(COL_WEATHER_ID);
+                rows.dates[i] = cursor.getLong(COL_WEATHER_DATE);
+                rows.descriptions[i] = cursor.getString(COL_WEATHER_DESC);
+                rows.maxTemps[i] = cursor.getDouble(COL_WEATHER_MAX_TEMP);
+                rows.minTemps[i] = cursor.getDouble(COL_WEATHER_MIN_TEMP);
+                rows.humidities[i] = cursor.getDouble(COL_WEATHER_HUMIDITY);
+                rows.pressures[i] = cursor.getDouble(COL_WEATHER_PRESSURE);
+                rows.windSpeeds[i] = cursor.getDouble(COL_WEATHER_WIND_SPEED);
+                rows.degrees[i] = cursor.getDouble(COL_WEATHER_DEGREES);
+                rows.conditionIds[i] = cursor.getInt(COL_WEATHER_CONDITION_ID);
+            }
+            return rows;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * @return the rows from today onwards in the {@link ForecastFragment} projection, or null
+     * if there are none.
+     */
+    Cursor toForecastCursor() {
+        MatrixCursor cursor = new MatrixCursor(ForecastFragment.FORECAST_COLUMNS, size());
+        long today = WeatherContract.normalizeDate(System.currentTimeMillis());
+        for (int i = 0; i < size(); i++) {
+            if (dates[i] < today) continue;
+            cursor.newRow()
+                    .add(ids[i])
+                    .add(dates[i])
+                    .add(descriptions[i])
+                    .add(maxTemps[i])
+                    .add(minTemps[i])
+                    .add(location)
+                    .add(conditionIds[i])
+                    .add(coordLat)
+                    .add(coordLong);
+        }
+        return cursor.getCount() > 0 ? cursor : null;
+    }
+
+    /**
+     * @return the row for a date in the {@link DetailFragment} projection, or null if there is
+     * none.
+     */
+    Cursor toDetailCursor(long date) {
+        int i = indexOf(date);
+        if (i < 0) {
+            return null;
+        }
+        MatrixCursor cursor = new MatrixCursor(DetailFragment.DETAIL_COLUMNS, 1);
+        cursor.newRow()
+                .add(ids[i])
+                .add(dates[i])
+                .add(descriptions[i])
+                .add(maxTemps[i])
+                .add(minTemps[i])
+                .add(humidities[i])
+                .add(pressures[i])
+                .add(windSpeeds[i])
+                .add(degrees[i])
+                .add(conditionIds[i])
+                .add(location);
+        return cursor;
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeUTF(location);
+        out.writeDouble(coordLat);
+        out.writeDouble(coordLong);
+        out.writeInt(size());
+        for (int i = 0; i < size(); i++) {
+            out.writeLong(ids[i]);
+            out.writeLong(dates[i]);
+            out.writeUTF(descriptions[i] == null ? "" : descriptions[i]);
+            out.writeDouble(maxTemps[i]);
+            out.writeDouble(minTemps[i]);
+            out.writeDouble(humidities[i]);
+            out.writeDouble(pressures[i]);
+            out.writeDouble(windSpeeds[i]);
+            out.writeDouble(degrees[i]);
+            out.writeInt(conditionIds[i]);
+        }
+    }
+
+    static ForecastRows readFrom(DataInputStream in) throws IOException {
+        String location = in.readUTF();
+        double coordLat = in.readDouble();
+        double coordLong = in.readDouble();
+        ForecastRows rows = new ForecastRows(location, coordLat, coordLong, in.readInt());
+        for (int i = 0; i < rows.size(); i++) {
+            rows.ids[i] = in.readLong();
+            rows.dates[i] = in.readLong();
+            rows.descriptions[i] = in.readUTF();
+            rows.maxTemps[i] = in.readDouble();
+            rows.minTemps[i] = in.readDouble();
+            rows.humidities[i] = in.readDouble();
+            rows.pressures[i] = in.readDouble();
+            rows.windSpeeds[i] = in.readDouble();
+            rows.degrees[i] = in.readDouble();
+            rows.conditionIds[i] = in.readInt();
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Keeps a small file with the last forecast for the preferred location, so that on a cold start
+ * the list and detail views can draw real data in their first frame instead of waiting for the
+ * database to open.  Their loaders still run, and replace the snapshot once they deliver.
+ *
+ * The snapshot is rewritten after every successful sync and whenever the forecast list is paused.
+ */
+public class ForecastSnapshotStore {
+    private static final String LOG_TAG = ForecastSnapshotStore.class.getSimpleName();
+
+    private static final String FILE_NAME = "forecast_snapshot";
+    // Bump this whenever the file layout changes, older files are then ignored
+    private static final int VERSION = 1;
+
+    private static ForecastSnapshotStore sInstance;
+
+    private final File mFile;
+    // Syncs and the list can both save at once, only one of them writes the file at a time
+    private final Object mWriteLock = new Object();
+    // The snapshot as last read or written, so the file is read at most once per process
+    private ForecastRows mRows;
+    private boolean mLoaded;
+
+    private ForecastSnapshotStore(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    public static synchronized ForecastSnapshotStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastSnapshotStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Returns the stored forecast list for a location, from today onwards, laid out like the
+     * cursor {@link ForecastFragment} loads.  This reads from disk the first time it is called
+     * and is meant to be called synchronously while the first frame is being built.
+     *
+     * @return the rows, or null if there is nothing stored for this location
+     */
+    public synchronized Cursor getForecastCursor(String location) {
+        ForecastRows rows = getRows(location);
+        return rows == null ? null : rows.toForecastCursor();
+    }
+
+    /**
+     * Returns the stored detail row for a day, laid out like the cursor {@link DetailFragment}
+     * loads.
+     *
+     * @param weatherUri A weather/location/date uri
+     * @return the row, or null if there is nothing stored for that day
+     */
+    public synchronized Cursor getDetailCursor(Uri weatherUri) {
+        ForecastRows rows = getRows(WeatherEntry.getLocationSettingFromUri(weatherUri));
+        return rows == null ? null : rows.toDetailCursor(WeatherEntry.getDateFromUri(weatherUri));
+    }
+
+    /**
+     * Reads the current forecast for a location from the provider and stores it.  This does
+     * disk and database work, so don't call it from the UI thread.
+     */
+    public void save(Context context, String location) {
+        ForecastRows rows = ForecastRows.query(context, location);
+        if (rows != null) {
+            save(rows);
+        }
+    }
+
+    /**
+     * Stores rows that have already been read from the provider.  Don't call this from the UI
+     * thread.
+     */
+    void save(ForecastRows rows) {
+        if (rows.size() == 0) {
+            return;
+        }
+        synchronized (mWriteLock) {
+            write(rows);
+        }
+    }
+
+    /**
+     * Like {@link #save(Context, String)}, on a background thread.
+     */
+    public void saveAsync(Context context, final String location) {
+        final Context appContext = context.getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                save(appContext, location);
+            }
+        });
+    }
+
+    private ForecastRows getRows(String location) {
+        if (!mLoaded) {
+            mRows = read();
+            mLoaded = true;
+        }
+        if (mRows == null || !mRows.location.equals(location)) {
+            return null;
+        }
+        return mRows;
+    }
+
+    private ForecastRows read() {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            return ForecastRows.readFrom(in);
+        } catch (FileNotFoundException e) {
+            // Nothing has been synced yet
+            return null;
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error reading forecast snapshot", e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private void write(ForecastRows rows) {
+        // Write to a temporary file and rename it, so a reader never sees half a snapshot
+        File tempFile = new File(mFile.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            out.writeInt(VERSION);
+            rows.writeTo(out);
+            out.close();
+            out = null;
+            if (!tempFile.renameTo(mFile)) {
+                Log.w(LOG_TAG, "Unable to replace forecast snapshot");
+                return;
+            }
+            synchronized (this) {
+                mRows = rows;
+                mLoaded = true;
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Error writing forecast snapshot", e);
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing more we can do
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.v7.widget.RecyclerView;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.View;
+
+/**
+ * Inflates forecast rows while the main thread is idle during startup, and puts them in the
+ * list's {@link RecyclerView.RecycledViewPool}.  When the forecast arrives, the list then only
+ * has to bind rows instead of inflating each one while it lays out.
+ *
+ * Rows are inflated on the main thread, one per idle pass, since the activity's inflater and
+ * the list's layout params aren't safe to use from another thread.  Idle passes only come
+ * after the first frame, so this only helps when the list is still waiting for its data.  As
+ * soon as the list has rows of its own, which it does right away when the persisted forecast
+ * was shown, there is nothing left to prepare and this stops.
+ */
+public class ForecastViewPrewarmer {
+    private static final String LOG_TAG = ForecastViewPrewarmer.class.getSimpleName();
+
+    // Extra rows beyond what fills the screen, for the ones partly scrolled into view
+    private static final int EXTRA_ROWS = 2;
+
+    /**
+     * Starts inflating rows for a list that may not have any yet.  Call from the main thread,
+     * right after the adapter has been set.
+     *
+     * @param useTodayLayout Whether the first row uses the larger today layout
+     */
+    public static void prewarm(final RecyclerView recyclerView, final ForecastAdapter adapter,
+                               final boolean useTodayLayout) {
+        final RecyclerView.RecycledViewPool pool = recyclerView.getRecycledViewPool();
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            private boolean mTodayDone = !useTodayLayout;
+            // Known once the first future day row has been measured
+            private int mFutureDayRows = -1;
+            private int mFutureDayCreated;
+
+            @Override
+            public boolean queueIdle() {
+                if (adapter.getItemCount() > 0 || recyclerView.getChildCount() > 0) {
+                    // The list has laid out, and inflated whatever it needed, itself
+                    return false;
+                }
+                try {
+                    if (!mTodayDone) {
+                        pool.putRecycledView(adapter.createViewHolder(recyclerView,
+                                ForecastAdapter.VIEW_TYPE_TODAY));
+                        mTodayDone = true;
+                        return true;
+                    }
+                    RecyclerView.ViewHolder holder = adapter.createViewHolder(recyclerView,
+                            ForecastAdapter.VIEW_TYPE_FUTURE_DAY);
+                    if (mFutureDayRows < 0) {
+                        mFutureDayRows = getRowsPerScreen(holder.itemView) + EXTRA_ROWS;
+                        // The default pool only keeps five of each type, make room for a
+                        // whole screen
+                        pool.setMaxRecycledViews(ForecastAdapter.VIEW_TYPE_FUTURE_DAY,
+                                mFutureDayRows);
+                    }
+                    // Nothing else is in the pool before the list first lays out, so these
+                    // rows are exactly its shortfall
+                    pool.putRecycledView(holder);
+                    return ++mFutureDayCreated < mFutureDayRows;
+                } catch (RuntimeException e) {
+                    // Not worth failing startup over, the list will inflate its own rows
+                    Log.w(LOG_TAG, "Unable to prewarm forecast rows", e);
+                    return false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Measures a row that hasn't been attached, to count how many of them fill the screen.
+     */
+    private static int getRowsPerScreen(View row) {
+        DisplayMetrics metrics = row.getResources().getDisplayMetrics();
+        row.measure(View.MeasureSpec.makeMeasureSpec(metrics.widthPixels, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        int rowHeight = row.getMeasuredHeight();
+        return rowHeight > 0 ? (metrics.heightPixels + rowHeight - 1) / rowHeight : 0;
+    }
+}
@@ -32,6 +32,18 @@ import android.widget.Checkable;
  * doesn't take advantage of new adapter features to track changes in the underlying data.
  */
 public class ItemChoiceManager {
+    /**
+     * Adapters with stable ids can implement this so that checked items are found again after a
+     * data set change with a single lookup instead of searching around their last position.
+     */
+    public interface PositionIndex {
+        /**
+         * @return the adapter position of the item with this stable id, or
+         * {@link RecyclerView#NO_POSITION} if it is no longer in the data set.
+         */
+        int getPositionForId(long id);
+    }
+
     private final String LOG_TAG = MainActivity.class.getSimpleName();
     private final String SELECTED_ITEMS_KEY = "SIK";
     private int mChoiceMode;
@@ -44,6 +56,22 @@ public class ItemChoiceManager {
             if (mAdapter != null && mAdapter.hasStableIds())
                 confirmCheckedPositionsById(mAdapter.getItemCount());
         }
+
+        // Granular updates can shift positions too, so the checked positions need confirming
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            onChanged();
+        }
     };
 
     private ItemChoiceManager() {
@@ -53,6 +81,7 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
@@ -162,6 +191,18 @@ public class ItemChoiceManager {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
             final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
 
+            if (mAdapter instanceof PositionIndex) {
+                final int pos = ((PositionIndex) mAdapter).getPositionForId(id);
+                if (pos == RecyclerView.NO_POSITION) {
+                    mCheckedIdStates.delete(id);
+                    checkedIndex--;
+                } else {
+                    mCheckStates.put(pos, true);
+                    mCheckedIdStates.setValueAt(checkedIndex, pos);
+                }
+                continue;
+            }
+
             final long lastPosId = mAdapter.getItemId(lastPos);
             if (id != lastPosId) {
                 // Look around to see if the ID is nearby. If not, uncheck it.
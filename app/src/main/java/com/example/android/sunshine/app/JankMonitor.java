@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.support.v7.widget.RecyclerView;
+import android.view.Choreographer;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+/**
+ * Measures how long each frame takes while the forecast list scrolls, and how much of that was
+ * spent inflating rows, binding them, and laying out the list.
+ *
+ * Frame times come from {@link Choreographer} callbacks, which only exist from Jelly Bean on,
+ * so nothing is recorded on older devices.  The numbers for recent scrolls can be read with
+ * {@code adb shell dumpsys activity com.example.android.sunshine.app/.MainActivity}.  All
+ * methods except {@link #getSummary()} and {@link #dump(PrintWriter)} must be called from the
+ * main thread.
+ */
+public class JankMonitor extends RecyclerView.OnScrollListener {
+
+    // Frames longer than this missed at least one vsync at 60Hz
+    private static final long JANK_THRESHOLD_NANOS = 24000000L;
+    // How many frames we keep, about 20 seconds of scrolling
+    private static final int MAX_FRAMES = 1200;
+
+    /**
+     * Percentiles of the recorded frame durations, and where the time of the slow ones went.
+     * Durations are in milliseconds.
+     */
+    public static final class Summary {
+        public int frames;
+        public double p50;
+        public double p90;
+        public double p95;
+        public double p99;
+        public double max;
+        /** Frames that took longer than one and a half vsyncs */
+        public int slowFrames;
+        /** Slow frames that spent most of their time inflating rows */
+        public int slowInflate;
+        /** Slow frames that spent most of their time binding rows */
+        public int slowBind;
+        /** Slow frames that spent most of their time in list layout, outside of binding */
+        public int slowLayout;
+
+        @Override
+        public String toString() {
+            return String.format("frames=%d p50=%.1f p90=%.1f p95=%.1f p99=%.1f max=%.1f"
+                            + " slow=%d (inflate=%d bind=%d layout=%d other=%d)",
+                    frames, p50, p90, p95, p99, max, slowFrames, slowInflate, slowBind,
+                    slowLayout, slowFrames - slowInflate - slowBind - slowLayout);
+        }
+    }
+
+    private static JankMonitor sInstance;
+
+    // Ring buffers of per frame durations, and of the work done during each frame
+    private final long[] mFrameNanos = new long[MAX_FRAMES];
+    private final long[] mInflateNanos = new long[MAX_FRAMES];
+    private final long[] mBindNanos = new long[MAX_FRAMES];
+    private final long[] mLayoutNanos = new long[MAX_FRAMES];
+    private int mCount;
+    private int mNext;
+
+    // Work done since the last frame callback, charged to the next recorded frame
+    private long mPendingInflateNanos;
+    private long mPendingBindNanos;
+    private long mPendingLayoutNanos;
+
+    private boolean mRunning;
+    private long mLastFrameTimeNanos;
+    private Object mFrameCallback;
+
+    public static JankMonitor getInstance() {
+        if (sInstance == null) {
+            sInstance = new JankMonitor();
+        }
+        return sInstance;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            stop();
+        } else {
+            start();
+        }
+    }
+
+    public void onInflate(long nanos) {
+        // Rows prewarmed at startup don't count, since that stops before the list can scroll
+        if (mRunning) mPendingInflateNanos += nanos;
+    }
+
+    public void onBind(long nanos) {
+        if (mRunning) mPendingBindNanos += nanos;
+    }
+
+    /**
+     * @param nanos Time spent laying out the list, including any inflating and binding it did
+     */
+    public void onLayout(long nanos) {
+        if (mRunning) mPendingLayoutNanos += nanos;
+    }
+
+    private void start() {
+        if (mRunning || Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return;
+        }
+        mRunning = true;
+        mLastFrameTimeNanos = 0;
+        postFrameCallback();
+    }
+
+    private void stop() {
+        mRunning = false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private void postFrameCallback() {
+        if (mFrameCallback == null) {
+            mFrameCallback = new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    onFrame(frameTimeNanos);
+                }
+            };
+        }
+        Choreographer.getInstance().postFrameCallback((Choreographer.FrameCallback) mFrameCallback);
+    }
+
+    private void onFrame(long frameTimeNanos) {
+        if (mLastFrameTimeNanos != 0) {
+            synchronized (this) {
+                mFrameNanos[mNext] = frameTimeNanos - mLastFrameTimeNanos;
+                mInflateNanos[mNext] = mPendingInflateNanos;
+                mBindNanos[mNext] = mPendingBindNanos;
+                mLayoutNanos[mNext] = mPendingLayoutNanos;
+                mNext = (mNext + 1) % MAX_FRAMES;
+                mCount = Math.min(mCount + 1, MAX_FRAMES);
+            }
+        }
+        mPendingInflateNanos = 0;
+        mPendingBindNanos = 0;
+        mPendingLayoutNanos = 0;
+        if (mRunning) {
+            mLastFrameTimeNanos = frameTimeNanos;
+            postFrameCallback();
+        } else {
+            mLastFrameTimeNanos = 0;
+        }
+    }
+
+    public synchronized void reset() {
+        mCount = 0;
+        mNext = 0;
+    }
+
+    public synchronized Summary getSummary() {
+        Summary summary = new Summary();
+        summary.frames = mCount;
+        if (mCount == 0) {
+            return summary;
+        }
+        long[] sorted = new long[mCount];
+        for (int i = 0; i < mCount; i++) {
+            long frame = mFrameNanos[i];
+            sorted[i] = frame;
+            if (frame <= JANK_THRESHOLD_NANOS) continue;
+
+            summary.slowFrames++;
+            long layoutOnly = mLayoutNanos[i] - mBindNanos[i] - mInflateNanos[i];
+            if (2 * mInflateNanos[i] > frame) {
+                summary.slowInflate++;
+            } else if (2 * mBindNanos[i] > frame) {
+                summary.slowBind++;
+            } else if (2 * layoutOnly > frame) {
+                summary.slowLayout++;
+            }
+        }
+        Arrays.sort(sorted);
+        summary.p50 = percentile(sorted, 50);
+        summary.p90 = percentile(sorted, 90);
+        summary.p95 = percentile(sorted, 95);
+        summary.p99 = percentile(sorted, 99);
+        summary.max = sorted[sorted.length - 1] / 1e6;
+        return summary;
+    }
+
+    public void dump(PrintWriter writer) {
+        writer.println("Forecast list scroll frames (ms):");
+        writer.print("  ");
+        writer.println(getSummary());
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.Intent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tells everything that displays weather data that the way it should be displayed has changed,
+ * such as the units or the art pack.
+ *
+ * The stored data is always metric and doesn't depend on the art pack, so nothing needs to be
+ * queried again.  Views re-format and re-skin the data they already hold, and the widgets,
+ * which keep no data of their own, are asked to redraw.  Changes to the data itself still go
+ * through the content provider.
+ */
+public class PresentationSettings {
+
+    public interface Listener {
+        /**
+         * Called on the main thread after a display setting has changed.
+         */
+        void onPresentationChanged();
+    }
+
+    public static final String ACTION_PRESENTATION_CHANGED =
+            "com.example.android.sunshine.app.ACTION_PRESENTATION_CHANGED";
+
+    // Only touched from the main thread
+    private static final List<Listener> sListeners = new ArrayList<Listener>();
+
+    public static void addListener(Listener listener) {
+        sListeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        sListeners.remove(listener);
+    }
+
+    /**
+     * Call from the main thread after a display setting has been saved.
+     */
+    public static void notifyChanged(Context context) {
+        WeatherFormatter.getInstance(context).invalidate();
+        for (Listener listener : new ArrayList<Listener>(sListeners)) {
+            listener.onPresentationChanged();
+        }
+        // Setting the package ensures that only components in our app will receive the broadcast
+        context.sendBroadcast(new Intent(ACTION_PRESENTATION_CHANGED)
+                .setPackage(context.getPackageName()));
+    }
+}
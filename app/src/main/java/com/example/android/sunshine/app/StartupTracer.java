@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+
+import java.io.PrintWriter;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Times how long {@link MainActivity} takes to show its first frame and its first forecast.
+ *
+ * Each startup phase is also a systrace section, so the same phases show up in a trace.  The
+ * last few startups are kept in memory and can be read with
+ * {@code adb shell dumpsys activity com.example.android.sunshine.app/.MainActivity}, or by
+ * tests through {@link #getRecords()}.  All methods must be called from the main thread except
+ * {@link #getRecords()} and {@link #dump(PrintWriter)}.
+ */
+public class StartupTracer {
+    private static final String LOG_TAG = StartupTracer.class.getSimpleName();
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({START_COLD, START_WARM, START_HOT})
+    public @interface StartType {}
+
+    /** First activity created in this process */
+    public static final int START_COLD = 0;
+    /** Activity created again in a process that already ran it */
+    public static final int START_WARM = 1;
+    /** Stopped activity brought back to the front */
+    public static final int START_HOT = 2;
+
+    private static final String[] START_TYPE_NAMES = {"cold", "warm", "hot"};
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({PHASE_CONTENT_VIEW, PHASE_SYNC_INIT, PHASE_GCM_CHECK, PHASE_PERSISTED_FORECAST})
+    public @interface Phase {}
+
+    /** Inflating the activity layout, which also inflates the forecast fragment */
+    public static final int PHASE_CONTENT_VIEW = 0;
+    /** Setting up the sync account, and possibly the first sync */
+    public static final int PHASE_SYNC_INIT = 1;
+    /** Checking Play Services and starting GCM registration */
+    public static final int PHASE_GCM_CHECK = 2;
+    /** Reading and binding the persisted forecast */
+    public static final int PHASE_PERSISTED_FORECAST = 3;
+
+    private static final String[] PHASE_NAMES =
+            {"setContentView", "initializeSyncAdapter", "gcmCheck", "persistedForecast"};
+
+    // How many startups we keep
+    private static final int MAX_RECORDS = 20;
+
+    /**
+     * Timings of one startup, in milliseconds from the start of onCreate, or onRestart for a
+     * hot start.  Values that haven't been reached yet are -1.
+     */
+    public static final class Record {
+        public final int startType;
+        public final long[] phaseMillis = new long[PHASE_NAMES.length];
+        public long firstFrameMillis = -1;
+        public long firstDataMillis = -1;
+
+        final long mStartUptime;
+
+        Record(int startType, long startUptime) {
+            this.startType = startType;
+            mStartUptime = startUptime;
+            for (int i = 0; i < phaseMillis.length; i++) {
+                phaseMillis[i] = -1;
+            }
+        }
+
+        Record copy() {
+            Record copy = new Record(startType, mStartUptime);
+            System.arraycopy(phaseMillis, 0, copy.phaseMillis, 0, phaseMillis.length);
+            copy.firstFrameMillis = firstFrameMillis;
+            copy.firstDataMillis = firstDataMillis;
+            return copy;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(START_TYPE_NAMES[startType]).append(':');
+            for (int i = 0; i < phaseMillis.length; i++) {
+                if (phaseMillis[i] >= 0) {
+                    sb.append(' ').append(PHASE_NAMES[i]).append('=').append(phaseMillis[i]);
+                }
+            }
+            sb.append(" firstFrame=").append(firstFrameMillis);
+            sb.append(" firstData=").append(firstDataMillis);
+            return sb.toString();
+        }
+    }
+
+    private static final List<Record> sRecords = new ArrayList<Record>();
+    private static Record sCurrent;
+    private static boolean sActivityCreatedBefore;
+    private static int sOpenPhase = -1;
+    private static long sPhaseStartUptime;
+
+    /**
+     * Starts timing a startup.  Call at the very beginning of onCreate or onRestart.
+     *
+     * @param restart true when called from onRestart
+     */
+    public static void onStartupBegin(boolean restart) {
+        int startType = restart ? START_HOT : sActivityCreatedBefore ? START_WARM : START_COLD;
+        sActivityCreatedBefore = true;
+        sCurrent = new Record(startType, SystemClock.uptimeMillis());
+        synchronized (sRecords) {
+            if (sRecords.size() == MAX_RECORDS) {
+                sRecords.remove(0);
+            }
+            sRecords.add(sCurrent);
+        }
+    }
+
+    public static void beginPhase(@Phase int phase) {
+        TraceCompat.beginSection(PHASE_NAMES[phase]);
+        sOpenPhase = phase;
+        sPhaseStartUptime = SystemClock.uptimeMillis();
+    }
+
+    public static void endPhase() {
+        TraceCompat.endSection();
+        if (sCurrent != null && sOpenPhase >= 0) {
+            long millis = SystemClock.uptimeMillis() - sPhaseStartUptime;
+            synchronized (sRecords) {
+                sCurrent.phaseMillis[sOpenPhase] = millis;
+            }
+        }
+        sOpenPhase = -1;
+    }
+
+    /**
+     * Records that the activity is about to draw its first frame.
+     */
+    public static void onFirstFrame() {
+        if (sCurrent == null || sCurrent.firstFrameMillis >= 0) {
+            return;
+        }
+        synchronized (sRecords) {
+            sCurrent.firstFrameMillis = SystemClock.uptimeMillis() - sCurrent.mStartUptime;
+        }
+        Log.i(LOG_TAG, "Startup " + sCurrent);
+    }
+
+    /**
+     * Records that forecast data has been bound to the list, whether persisted or loaded.
+     */
+    public static void onFirstData() {
+        if (sCurrent == null || sCurrent.firstDataMillis >= 0) {
+            return;
+        }
+        synchronized (sRecords) {
+            sCurrent.firstDataMillis = SystemClock.uptimeMillis() - sCurrent.mStartUptime;
+        }
+    }
+
+    /**
+     * @return copies of the recorded startups, oldest first.
+     */
+    public static List<Record> getRecords() {
+        synchronized (sRecords) {
+            List<Record> records = new ArrayList<Record>(sRecords.size());
+            for (Record record : sRecords) {
+                records.add(record.copy());
+            }
+            return records;
+        }
+    }
+
+    public static void dump(PrintWriter writer) {
+        writer.println("Startup timings (ms):");
+        for (Record record : getRecords()) {
+            writer.print("  ");
+            writer.println(record);
+        }
+    }
+}
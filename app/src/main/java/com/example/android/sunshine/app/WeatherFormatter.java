@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Formats the dates, temperatures and wind strings shown by the forecast list, the detail view,
+ * the widgets and the notifications.
+ *
+ * The same handful of days and values get formatted over and over, so instead of building new
+ * {@link Time} and {@link SimpleDateFormat} objects on every call we keep one set of formatters
+ * for the current locale and memoise the results by julian day and rounded value.  Everything
+ * is dropped when the locale, time zone or units change, or when the day rolls over (since
+ * "Today" and "Tomorrow" move with it).
+ *
+ * All public methods are synchronized: the formatter is shared between the UI thread, the sync
+ * thread and the widget binder threads.
+ */
+public class WeatherFormatter {
+
+    private static final String[] WIND_DIRECTIONS = {
+            "N", "NE", "E", "SE", "S", "SW", "W", "NW", "Unknown"
+    };
+
+    private static WeatherFormatter sInstance;
+
+    private final Context mContext;
+
+    // State the caches below were built for.  A change to any of these invalidates them.
+    private Locale mLocale;
+    private TimeZone mTimeZone;
+    private long mGmtOffset;
+    private int mTodayJulianDay;
+    private long mMidnight;
+    private long mNextMidnight;
+    private boolean mIsMetric;
+    private boolean mValid;
+
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private SimpleDateFormat mShortDateFormat;
+
+    private String mToday;
+    private String mTomorrow;
+    private String mFullFriendlyDateFormat;
+    private String mTemperatureFormat;
+    private String mWindFormat;
+
+    // Keyed by julian day
+    private final SparseArray<String> mFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mLongFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mFullFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mDayNames = new SparseArray<String>();
+    private final SparseArray<String> mMonthDays = new SparseArray<String>();
+
+    // Keyed by the rounded value, in the user's preferred units
+    private final SparseArray<String> mTemperatures = new SparseArray<String>();
+    private final SparseArray<String> mWinds = new SparseArray<String>();
+
+    private final BroadcastReceiver mClockReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidate();
+        }
+    };
+
+    public static synchronized WeatherFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherFormatter(Context context) {
+        mContext = context;
+        // Locale changes are also caught by comparing against Locale.getDefault() on every call,
+        // but time zone changes can't be checked for without allocating.
+        IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+        context.registerReceiver(mClockReceiver, filter);
+    }
+
+    /**
+     * Drops every cached formatter and string.  They are rebuilt lazily on the next call.
+     */
+    public synchronized void invalidate() {
+        mValid = false;
+    }
+
+    public synchronized boolean isMetric() {
+        ensureValid();
+        return mIsMetric;
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        ensureValid();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffset);
+        SparseArray<String> cache = displayLongToday ? mLongFriendlyDays : mFriendlyDays;
+        String friendlyDay = cache.get(julianDay);
+        if (friendlyDay == null) {
+            if (displayLongToday && julianDay == mTodayJulianDay) {
+                // "Today, June 24"
+                friendlyDay = String.format(mLocale, mFullFriendlyDateFormat,
+                        mToday, monthDay(julianDay, dateInMillis));
+            } else if (julianDay < mTodayJulianDay + 7) {
+                // Less than a week in the future, just the day name
+                friendlyDay = dayName(julianDay, dateInMillis);
+            } else {
+                // "Mon Jun 3"
+                friendlyDay = mShortDateFormat.format(new Date(dateInMillis));
+            }
+            cache.put(julianDay, friendlyDay);
+        }
+        return friendlyDay;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    public synchronized String getFullFriendlyDayString(long dateInMillis) {
+        ensureValid();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOffset);
+        String fullFriendlyDay = mFullFriendlyDays.get(julianDay);
+        if (fullFriendlyDay == null) {
+            fullFriendlyDay = String.format(mLocale, mFullFriendlyDateFormat,
+                    dayName(julianDay, dateInMillis), monthDay(julianDay, dateInMillis));
+            mFullFriendlyDays.put(julianDay, fullFriendlyDay);
+        }
+        return fullFriendlyDay;
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        ensureValid();
+        return dayName(Time.getJulianDay(dateInMillis, mGmtOffset), dateInMillis);
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        ensureValid();
+        return monthDay(Time.getJulianDay(dateInMillis, mGmtOffset), dateInMillis);
+    }
+
+    /**
+     * @see Utility#formatTemperature(Context, double)
+     */
+    public synchronized String formatTemperature(double temperature) {
+        ensureValid();
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        if (!mIsMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        int rounded = roundHalfUp(temperature);
+        String formatted = mTemperatures.get(rounded);
+        if (formatted == null) {
+            formatted = String.format(mLocale, mTemperatureFormat, (double) rounded);
+            mTemperatures.put(rounded, formatted);
+        }
+        return formatted;
+    }
+
+    /**
+     * @see Utility#getFormattedWind(Context, float, float)
+     */
+    public synchronized String getFormattedWind(float windSpeed, float degrees) {
+        ensureValid();
+        if (!mIsMetric) {
+            windSpeed = .621371192237334f * windSpeed;
+        }
+
+        int direction = getWindDirectionIndex(degrees);
+        int rounded = roundHalfUp(windSpeed);
+        int key = rounded * WIND_DIRECTIONS.length + direction;
+        String formatted = mWinds.get(key);
+        if (formatted == null) {
+            formatted = String.format(mLocale, mWindFormat,
+                    (float) rounded, WIND_DIRECTIONS[direction]);
+            mWinds.put(key, formatted);
+        }
+        return formatted;
+    }
+
+    private String dayName(int julianDay, long dateInMillis) {
+        String dayName = mDayNames.get(julianDay);
+        if (dayName == null) {
+            if (julianDay == mTodayJulianDay) {
+                dayName = mToday;
+            } else if (julianDay == mTodayJulianDay + 1) {
+                dayName = mTomorrow;
+            } else {
+                // Otherwise, the format is just the day of the week (e.g "Wednesday")
+                dayName = mDayNameFormat.format(new Date(dateInMillis));
+            }
+            mDayNames.put(julianDay, dayName);
+        }
+        return dayName;
+    }
+
+    private String monthDay(int julianDay, long dateInMillis) {
+        String monthDay = mMonthDays.get(julianDay);
+        if (monthDay == null) {
+            monthDay = mMonthDayFormat.format(new Date(dateInMillis));
+            mMonthDays.put(julianDay, monthDay);
+        }
+        return monthDay;
+    }
+
+    /**
+     * Checks the state the caches were built for against the current one and rebuilds them if
+     * anything moved.  Allocation free when nothing changed.
+     */
+    private void ensureValid() {
+        long now = System.currentTimeMillis();
+        boolean isMetric = AppSettings.get(mContext).isMetric;
+        if (mValid
+                && isMetric == mIsMetric
+                && now >= mMidnight && now < mNextMidnight
+                && mLocale.equals(Locale.getDefault())
+                && mTimeZone.getOffset(now) / 1000 == mGmtOffset) {
+            return;
+        }
+
+        mLocale = Locale.getDefault();
+        mTimeZone = TimeZone.getDefault();
+        mGmtOffset = mTimeZone.getOffset(now) / 1000;
+        mTodayJulianDay = Time.getJulianDay(now, mGmtOffset);
+        Time time = new Time();
+        mMidnight = time.setJulianDay(mTodayJulianDay);
+        mNextMidnight = time.setJulianDay(mTodayJulianDay + 1);
+
+        mIsMetric = isMetric;
+
+        mDayNameFormat = new SimpleDateFormat("EEEE", mLocale);
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd", mLocale);
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd", mLocale);
+
+        mToday = mContext.getString(R.string.today);
+        mTomorrow = mContext.getString(R.string.tomorrow);
+        mFullFriendlyDateFormat = mContext.getString(R.string.format_full_friendly_date);
+        mTemperatureFormat = mContext.getString(R.string.format_temperature);
+        mWindFormat = mContext.getString(mIsMetric
+                ? R.string.format_wind_kmh : R.string.format_wind_mph);
+
+        mFriendlyDays.clear();
+        mLongFriendlyDays.clear();
+        mFullFriendlyDays.clear();
+        mDayNames.clear();
+        mMonthDays.clear();
+        mTemperatures.clear();
+        mWinds.clear();
+        mValid = true;
+    }
+
+    /**
+     * Rounds the same way the "%1.0f" format does, so cached strings match what formatting the
+     * raw value would have produced.
+     */
+    private static int roundHalfUp(double value) {
+        return (int) (value < 0 ? -Math.floor(-value + 0.5) : Math.floor(value + 0.5));
+    }
+
+    private static int getWindDirectionIndex(float degrees) {
+        // From wind direction in degrees, determine compass direction (e.g NW)
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return 0;
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            return 1;
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            return 2;
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            return 3;
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            return 4;
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            return 5;
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            return 6;
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            return 7;
+        }
+        return 8;
+    }
+}
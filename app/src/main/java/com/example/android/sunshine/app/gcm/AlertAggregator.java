@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects weather alerts into what a single notification should show.
+ *
+ * Alerts are grouped by location, and an alert repeated for the same location only shows once.
+ * Everything received within {@link #WINDOW_MILLIS} of the latest alert for a location is kept.
+ * Every new alert updates the notification right away, but only the first post in any
+ * {@link #MIN_ALERT_INTERVAL_MILLIS} makes a sound, so a burst of pushes alerts the user once.
+ *
+ * Times are passed in, so tests don't have to wait.
+ */
+public class AlertAggregator {
+
+    // How long alerts for a location stay in the notification without a new one
+    static final long WINDOW_MILLIS = 30 * 60 * 1000;
+    static final long MIN_ALERT_INTERVAL_MILLIS = 10 * 1000;
+
+    public static class Alert {
+        public final String location;
+        /** Oldest first */
+        public final List<String> weather;
+
+        Alert(String location, List<String> weather) {
+            this.location = location;
+            this.weather = weather;
+        }
+    }
+
+    public static class Post {
+        /** By location, oldest first */
+        public final List<Alert> alerts;
+        /** False if the user was alerted too recently, and this post should update quietly */
+        public final boolean alert;
+
+        Post(List<Alert> alerts, boolean alert) {
+            this.alerts = alerts;
+            this.alert = alert;
+        }
+    }
+
+    private static class Pending {
+        final Set<String> weather = new LinkedHashSet<String>();
+        long receivedAt;
+    }
+
+    // Keyed by location, oldest first
+    private final Map<String, Pending> mPending = new LinkedHashMap<String, Pending>();
+    private long mLastAlertAt = Long.MIN_VALUE;
+
+    /**
+     * @return what the notification should show now, or null if the alert is already shown
+     */
+    public synchronized Post add(String weather, String location, long now) {
+        expire(now);
+        Pending pending = mPending.remove(location);
+        if (pending == null) {
+            pending = new Pending();
+        }
+        // Moves the location to the end, so the most recent one is shown last
+        mPending.put(location, pending);
+        pending.receivedAt = now;
+        if (!pending.weather.add(weather)) {
+            return null;
+        }
+        boolean alert = mLastAlertAt == Long.MIN_VALUE
+                || now - mLastAlertAt >= MIN_ALERT_INTERVAL_MILLIS;
+        if (alert) {
+            mLastAlertAt = now;
+        }
+        List<Alert> alerts = new ArrayList<Alert>(mPending.size());
+        for (Map.Entry<String, Pending> entry : mPending.entrySet()) {
+            alerts.add(new Alert(entry.getKey(), Collections.unmodifiableList(
+                    new ArrayList<String>(entry.getValue().weather))));
+        }
+        return new Post(alerts, alert);
+    }
+
+    /**
+     * Forgets every alert, once the user has dismissed the notification showing them.
+     */
+    public synchronized void clear() {
+        mPending.clear();
+    }
+
+    private void expire(long now) {
+        Iterator<Pending> iterator = mPending.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().receivedAt >= WINDOW_MILLIS) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.support.v4.app.NotificationCompat;
+import android.text.TextUtils;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+
+
+/**
+ * Shows the weather alerts pushed to us as one notification, listing them by location.
+ *
+ * What the notification shows, and whether it alerts the user, is up to {@link AlertAggregator}.
+ * It is posted before the push has been handled, since nothing keeps the process awake after
+ * that.
+ */
+public class AlertNotifier {
+
+    public static final int NOTIFICATION_ID = 1;
+
+    private static final AlertAggregator sAggregator = new AlertAggregator();
+
+    private static Bitmap sLargeIcon;
+
+    /**
+     * Told when the user dismisses the notification, so the alerts it showed don't come back
+     * with the next one.
+     */
+    public static class DismissReceiver extends BroadcastReceiver {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            sAggregator.clear();
+        }
+    }
+
+    /**
+     * Adds an alert to the notification, and posts it.  Don't call from the main thread.
+     */
+    public static synchronized void showAlert(Context context, String weather, String location) {
+        AlertAggregator.Post post =
+                sAggregator.add(weather, location, SystemClock.elapsedRealtime());
+        if (post != null) {
+            post(context.getApplicationContext(), post);
+        }
+    }
+
+    private static void post(Context context, AlertAggregator.Post post) {
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+        String latest = null;
+        int count = 0;
+        for (AlertAggregator.Alert alert : post.alerts) {
+            latest = String.format(context.getString(R.string.gcm_weather_alert),
+                    TextUtils.join(", ", alert.weather), alert.location);
+            style.addLine(latest);
+            count += alert.weather.size();
+        }
+        String title = post.alerts.size() == 1
+                ? context.getString(R.string.gcm_weather_alert_title)
+                : String.format(context.getString(R.string.gcm_weather_alerts_title),
+                        post.alerts.size());
+        style.setBigContentTitle(title);
+
+        if (sLargeIcon == null) {
+            // Notifications using both a large and a small icon (which yours should!) need the
+            // large icon as a bitmap.  It's the same for every alert, so it's only decoded once.
+            sLargeIcon = BitmapFactory.decodeResource(context.getResources(),
+                    R.drawable.art_storm);
+        }
+        PendingIntent contentIntent = PendingIntent.getActivity(context, 0,
+                new Intent(context, MainActivity.class), 0);
+        PendingIntent deleteIntent = PendingIntent.getBroadcast(context, 0,
+                new Intent(context, DismissReceiver.class), 0);
+        NotificationCompat.Builder builder =
+                new NotificationCompat.Builder(context)
+                        .setSmallIcon(R.drawable.art_clear)
+                        .setLargeIcon(sLargeIcon)
+                        .setContentTitle(title)
+                        .setContentText(latest)
+                        .setNumber(count)
+                        .setStyle(style)
+                        .setPriority(NotificationCompat.PRIORITY_HIGH)
+                        // Updates within a burst change what's listed without another sound
+                        .setOnlyAlertOnce(!post.alert)
+                        .setContentIntent(contentIntent)
+                        .setDeleteIntent(deleteIntent);
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        notificationManager.notify(NOTIFICATION_ID, builder.build());
+    }
+}
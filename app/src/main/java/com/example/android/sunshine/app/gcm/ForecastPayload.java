@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentValues;
+import android.text.format.Time;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A forecast sent inside a push message, so it can be stored without fetching it.
+ *
+ * Push messages are limited to 4KB, so each day is an array instead of an object:
+ * <pre>
+ * {"v": 1, "city": "Mountain View", "lat": 37.42, "lon": -122.08,
+ *  "days": [[weather id, "description", max, min, humidity, pressure, wind speed, degrees], ...]}
+ * </pre>
+ * Like the OpenWeatherMap response, the first day is today where the device is, and the values
+ * are metric.  A payload with a version we don't know is not parsed, so the server can move to
+ * a new encoding without breaking older installs, which fall back to fetching the forecast.
+ */
+public class ForecastPayload {
+
+    public static final int VERSION = 1;
+
+    static final String KEY_VERSION = "v";
+    static final String KEY_CITY = "city";
+    static final String KEY_LATITUDE = "lat";
+    static final String KEY_LONGITUDE = "lon";
+    static final String KEY_DAYS = "days";
+
+    // Positions in each day's array
+    private static final int DAY_WEATHER_ID = 0;
+    private static final int DAY_DESCRIPTION = 1;
+    private static final int DAY_MAX = 2;
+    private static final int DAY_MIN = 3;
+    private static final int DAY_HUMIDITY = 4;
+    private static final int DAY_PRESSURE = 5;
+    private static final int DAY_WIND_SPEED = 6;
+    private static final int DAY_DEGREES = 7;
+
+    public final String location;
+    public final String cityName;
+    public final double lat;
+    public final double lon;
+    /** One row per day, starting today, ready for the weather table except for the location */
+    public final ContentValues[] days;
+
+    private ForecastPayload(String location, String cityName, double lat, double lon,
+                            ContentValues[] days) {
+        this.location = location;
+        this.cityName = cityName;
+        this.lat = lat;
+        this.lon = lon;
+        this.days = days;
+    }
+
+    /**
+     * @param location The location setting the forecast is for
+     * @param forecast The encoded forecast
+     * @return the forecast, or null if it uses a version we don't understand
+     * @throws JSONException if the forecast is malformed
+     */
+    public static ForecastPayload parse(String location, JSONObject forecast)
+            throws JSONException {
+        if (forecast.getInt(KEY_VERSION) != VERSION) {
+            return null;
+        }
+        JSONArray daysJson = forecast.getJSONArray(KEY_DAYS);
+        if (daysJson.length() == 0) {
+            throw new JSONException("No days in forecast");
+        }
+
+        // Normalize the dates the same way the sync does, from today's julian day
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        dayTime = new Time();
+
+        ContentValues[] days = new ContentValues[daysJson.length()];
+        for (int i = 0; i < days.length; i++) {
+            JSONArray day = daysJson.getJSONArray(i);
+            ContentValues values = new ContentValues();
+            values.put(WeatherEntry.COLUMN_DATE, dayTime.setJulianDay(julianStartDay + i));
+            values.put(WeatherEntry.COLUMN_WEATHER_ID, day.getInt(DAY_WEATHER_ID));
+            values.put(WeatherEntry.COLUMN_SHORT_DESC, day.getString(DAY_DESCRIPTION));
+            values.put(WeatherEntry.COLUMN_MAX_TEMP, day.getDouble(DAY_MAX));
+            values.put(WeatherEntry.COLUMN_MIN_TEMP, day.getDouble(DAY_MIN));
+            values.put(WeatherEntry.COLUMN_HUMIDITY, day.getInt(DAY_HUMIDITY));
+            values.put(WeatherEntry.COLUMN_PRESSURE, day.getDouble(DAY_PRESSURE));
+            values.put(WeatherEntry.COLUMN_WIND_SPEED, day.getDouble(DAY_WIND_SPEED));
+            values.put(WeatherEntry.COLUMN_DEGREES, day.getDouble(DAY_DEGREES));
+            days[i] = values;
+        }
+        return new ForecastPayload(location, forecast.getString(KEY_CITY),
+                forecast.getDouble(KEY_LATITUDE), forecast.getDouble(KEY_LONGITUDE), days);
+    }
+}
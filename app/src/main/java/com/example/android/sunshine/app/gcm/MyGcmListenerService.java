@@ -16,33 +16,63 @@
 
 package com.example.android.sunshine.app.gcm;
 
-import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.Context;
-import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.support.v4.app.NotificationCompat;
 import android.util.Log;
 import android.widget.Toast;
 
-import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.gcm.GcmListenerService;
 
-import org.json.JSONException;
-import org.json.JSONObject;
-
 public class MyGcmListenerService extends GcmListenerService {
 
     private static final String TAG = "MyGcmListenerService";
 
-    private static final String EXTRA_DATA = "data";
-    private static final String EXTRA_WEATHER = "weather";
-    private static final String EXTRA_LOCATION = "location";
+    // Kept across messages, so bursts of pushes are deduplicated
+    private static PushMessageHandler sHandler;
+
+    private static synchronized PushMessageHandler getHandler(final Context context) {
+        if (sHandler == null) {
+            // TODO: gcm_default sender ID comes from the API console
+            sHandler = new PushMessageHandler(context.getString(R.string.gcm_defaultSenderId),
+                    new PushMessageHandler.Actions() {
+                        @Override
+                        public String getPreferredLocation() {
+                            return Utility.getPreferredLocation(context);
+                        }
+
+                        @Override
+                        public boolean isSyncPending() {
+                            return SunshineSyncAdapter.isSyncPending(context);
+                        }
+
+                        @Override
+                        public boolean isSyncActive() {
+                            return SunshineSyncAdapter.isSyncActive(context);
+                        }
 
-    public static final int NOTIFICATION_ID = 1;
+                        @Override
+                        public void requestSync(String location) {
+                            SunshineSyncAdapter.syncLocation(context, location);
+                        }
+
+                        @Override
+                        public void storeForecast(ForecastPayload forecast) {
+                            SunshineSyncAdapter.storeForecast(context, forecast.location,
+                                    forecast.cityName, forecast.lat, forecast.lon, forecast.days,
+                                    false);
+                        }
+
+                        @Override
+                        public void showAlert(String weather, String location) {
+                            AlertNotifier.showAlert(context, weather, location);
+                        }
+                    });
+        }
+        return sHandler;
+    }
 
     /**
      * Called when message is received.
@@ -55,56 +85,11 @@ public class MyGcmListenerService extends GcmListenerService {
     public void onMessageReceived(String from, Bundle data) {
         // Time to unparcel the bundle!
         if (!data.isEmpty()) {
-            // TODO: gcm_default sender ID comes from the API console
-            String senderId = getString(R.string.gcm_defaultSenderId);
-            if (senderId.length() == 0) {
+            if (getString(R.string.gcm_defaultSenderId).length() == 0) {
                 Toast.makeText(this, "SenderID string needs to be set", Toast.LENGTH_LONG).show();
             }
-            // Not a bad idea to check that the message is coming from your server.
-            if ((senderId).equals(from)) {
-                // Process message and then post a notification of the received message.
-                try {
-                    JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
-                    String weather = jsonObject.getString(EXTRA_WEATHER);
-                    String location = jsonObject.getString(EXTRA_LOCATION);
-                    String alert =
-                            String.format(getString(R.string.gcm_weather_alert), weather, location);
-                    sendNotification(alert);
-                } catch (JSONException e) {
-                    // JSON parsing failed, so we just let this message go, since GCM is not one
-                    // of our critical features.
-                }
-            }
-            Log.i(TAG, "Received: " + data.toString());
+            int result = getHandler(getApplicationContext()).handle(from, data);
+            Log.i(TAG, "Received: " + data.toString() + ", result " + result);
         }
     }
-
-    /**
-     *  Put the message into a notification and post it.
-     *  This is just one simple example of what you might choose to do with a GCM message.
-     *
-     * @param message The alert message to be posted.
-     */
-    private void sendNotification(String message) {
-        NotificationManager mNotificationManager =
-                (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        PendingIntent contentIntent =
-                PendingIntent.getActivity(this, 0, new Intent(this, MainActivity.class), 0);
-
-        // Notifications using both a large and a small icon (which yours should!) need the large
-        // icon as a bitmap. So we need to create that here from the resource ID, and pass the
-        // object along in our notification builder. Generally, you want to use the app icon as the
-        // small icon, so that users understand what app is triggering this notification.
-        Bitmap largeIcon = BitmapFactory.decodeResource(this.getResources(), R.drawable.art_storm);
-        NotificationCompat.Builder mBuilder =
-                new NotificationCompat.Builder(this)
-                        .setSmallIcon(R.drawable.art_clear)
-                        .setLargeIcon(largeIcon)
-                        .setContentTitle("Weather Alert!")
-                        .setStyle(new NotificationCompat.BigTextStyle().bigText(message))
-                        .setContentText(message)
-                        .setPriority(NotificationCompat.PRIORITY_HIGH);
-        mBuilder.setContentIntent(contentIntent);
-        mNotificationManager.notify(NOTIFICATION_ID, mBuilder.build());
-    }
-}
\ No newline at end of file
+}
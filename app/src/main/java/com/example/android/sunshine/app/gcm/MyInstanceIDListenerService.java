@@ -16,7 +16,6 @@
 
 package com.example.android.sunshine.app.gcm;
 
-import android.content.Intent;
 import com.google.android.gms.iid.InstanceIDListenerService;
 
 public class MyInstanceIDListenerService extends InstanceIDListenerService {
@@ -29,8 +28,7 @@ public class MyInstanceIDListenerService extends InstanceIDListenerService {
      */
     @Override
     public void onTokenRefresh() {
-        // Fetch updated Instance ID token.
-        Intent intent = new Intent(this, RegistrationIntentService.class);
-        startService(intent);
+        // Fetch updated Instance ID token once we're online.
+        RegistrationManager.onTokenRefresh(this);
     }
 }
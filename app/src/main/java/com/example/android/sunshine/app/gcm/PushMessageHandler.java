@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Decides what to do with a push message, independently of GCM and of the sync framework.
+ *
+ * Messages carry a JSON object in their "data" extra.  A "weather" and "location" pair is an
+ * alert to show.  A "stale" flag with a "location" tells us the server has a newer forecast for
+ * that location, which we fetch with an expedited sync instead of waiting for the periodic one.
+ * Several pushes for the same update often arrive close together, so a sync is only requested
+ * when none is already queued, and at most once per location in a short window.  A sync that is
+ * already running may have fetched before the update was published, so one more is queued
+ * behind it.
+ * A "forecast" object with a "location" carries the new forecast itself, encoded as described
+ * in {@link ForecastPayload}, and is stored directly with no fetch at all.
+ *
+ * What actually happens is left to {@link Actions}, so tests can feed messages through a fake.
+ */
+public class PushMessageHandler {
+
+    public interface Actions {
+        /** @return the location the forecast is shown for */
+        String getPreferredLocation();
+
+        /** @return true if a sync is queued and hasn't started yet */
+        boolean isSyncPending();
+
+        /** @return true if a sync is running */
+        boolean isSyncActive();
+
+        /** Starts an expedited sync of this location */
+        void requestSync(String location);
+
+        /** Stores a forecast that came with a message */
+        void storeForecast(ForecastPayload forecast);
+
+        /** Shows a weather alert */
+        void showAlert(String weather, String location);
+    }
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({RESULT_IGNORED, RESULT_ALERT, RESULT_SYNC_REQUESTED, RESULT_SYNC_DEDUPLICATED,
+            RESULT_FORECAST_STORED})
+    public @interface Result {}
+
+    /** Not from our server, malformed, or about a location we don't show */
+    public static final int RESULT_IGNORED = 0;
+    public static final int RESULT_ALERT = 1;
+    public static final int RESULT_SYNC_REQUESTED = 2;
+    /** The forecast is stale, but a queued sync that will fetch it hasn't started yet */
+    public static final int RESULT_SYNC_DEDUPLICATED = 3;
+    public static final int RESULT_FORECAST_STORED = 4;
+
+    static final String EXTRA_DATA = "data";
+    static final String KEY_WEATHER = "weather";
+    static final String KEY_LOCATION = "location";
+    static final String KEY_STALE = "stale";
+    static final String KEY_FORECAST = "forecast";
+
+    // Pushes for the same location within this long of a requested sync are covered by it
+    static final long DEDUP_WINDOW_MILLIS = 60 * 1000;
+
+    private final String mSenderId;
+    private final Actions mActions;
+    // Keyed by location, in elapsed realtime
+    private final Map<String, Long> mLastSyncRequests = new HashMap<String, Long>();
+
+    public PushMessageHandler(String senderId, Actions actions) {
+        mSenderId = senderId;
+        mActions = actions;
+    }
+
+    /**
+     * Call for each message received, one at a time.
+     *
+     * @param from SenderID of the sender.
+     * @param data Data bundle containing message data as key/value pairs.
+     */
+    public synchronized @Result int handle(String from, Bundle data) {
+        // Not a bad idea to check that the message is coming from your server.
+        if (mSenderId.length() == 0 || !mSenderId.equals(from)
+                || data == null || !data.containsKey(EXTRA_DATA)) {
+            return RESULT_IGNORED;
+        }
+        JSONObject message;
+        try {
+            message = new JSONObject(data.getString(EXTRA_DATA));
+        } catch (JSONException e) {
+            // JSON parsing failed, so we just let this message go, since GCM is not one
+            // of our critical features.
+            return RESULT_IGNORED;
+        }
+        String location = message.optString(KEY_LOCATION, null);
+        if (location == null) {
+            return RESULT_IGNORED;
+        }
+
+        JSONObject forecast = message.optJSONObject(KEY_FORECAST);
+        if (forecast != null) {
+            return onForecast(location, forecast);
+        }
+        if (message.optBoolean(KEY_STALE, false)) {
+            return onStale(location);
+        }
+        String weather = message.optString(KEY_WEATHER, null);
+        if (weather == null) {
+            return RESULT_IGNORED;
+        }
+        mActions.showAlert(weather, location);
+        return RESULT_ALERT;
+    }
+
+    private @Result int onForecast(String location, JSONObject forecast) {
+        if (!location.equals(mActions.getPreferredLocation())) {
+            return RESULT_IGNORED;
+        }
+        ForecastPayload payload;
+        try {
+            payload = ForecastPayload.parse(location, forecast);
+        } catch (JSONException e) {
+            payload = null;
+        }
+        if (payload == null) {
+            // Newer encoding or broken payload, but it still tells us there is a new forecast
+            return onStale(location);
+        }
+        mActions.storeForecast(payload);
+        // A stale marker for the same update right behind this one doesn't need a fetch
+        mLastSyncRequests.put(location, SystemClock.elapsedRealtime());
+        return RESULT_FORECAST_STORED;
+    }
+
+    private @Result int onStale(String location) {
+        // Only the preferred location's forecast is kept up to date
+        if (!location.equals(mActions.getPreferredLocation())) {
+            return RESULT_IGNORED;
+        }
+        if (mActions.isSyncPending()) {
+            return RESULT_SYNC_DEDUPLICATED;
+        }
+        // A sync requested moment ago may not show as pending yet, but once one is running it
+        // can't be trusted to cover this update, and the framework queues the next one behind it
+        long now = SystemClock.elapsedRealtime();
+        Long lastRequest = mLastSyncRequests.get(location);
+        if (lastRequest != null && now - lastRequest < DEDUP_WINDOW_MILLIS
+                && !mActions.isSyncActive()) {
+            return RESULT_SYNC_DEDUPLICATED;
+        }
+        mLastSyncRequests.put(location, now);
+        mActions.requestSync(location);
+        return RESULT_SYNC_REQUESTED;
+    }
+}
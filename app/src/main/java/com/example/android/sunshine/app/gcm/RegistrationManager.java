@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.BuildConfig;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.google.android.gms.gcm.GcmNetworkManager;
+import com.google.android.gms.gcm.GoogleCloudMessaging;
+import com.google.android.gms.gcm.OneoffTask;
+import com.google.android.gms.gcm.Task;
+import com.google.android.gms.iid.InstanceID;
+
+/**
+ * Keeps track of this install's GCM registration token and whether our server has it.
+ *
+ * The token, the app version it was fetched for and the server's acknowledgement are stored, so
+ * starting the app only has to read them.  Network work is only scheduled when something is
+ * missing: on the first start, after an update, or when Instance ID tells us the token changed.
+ * It then runs as a single {@link GcmNetworkManager} task once the device is online, and is
+ * retried with backoff until the server has acknowledged the token.  Requests made while one
+ * is pending replace it, so they are sent together.
+ */
+public class RegistrationManager {
+    private static final String TAG = "RegistrationManager";
+
+    static final String TASK_TAG = "gcm_registration";
+
+    // Kept with the other preferences, which are already loaded by the time the app starts
+    private static final String KEY_TOKEN = "gcm_token";
+    private static final String KEY_APP_VERSION = "gcm_token_app_version";
+    private static final String KEY_ACKNOWLEDGED = "gcm_token_acknowledged";
+
+    // Let the app finish starting before registering
+    private static final long WINDOW_START_SECONDS = 30;
+    private static final long WINDOW_END_SECONDS = 10 * 60;
+
+    /**
+     * Call when the app starts.  Only reads the stored state, and schedules the registration if
+     * it isn't complete for this version of the app.
+     */
+    public static void onAppStart(Context context) {
+        if (isRegistered(context)) {
+            return;
+        }
+        scheduleRegistration(context);
+    }
+
+    /**
+     * Call when Instance ID says the token has to be fetched again.
+     */
+    public static void onTokenRefresh(Context context) {
+        getPrefs(context).edit()
+                .remove(KEY_TOKEN)
+                .putBoolean(KEY_ACKNOWLEDGED, false)
+                .apply();
+        // Until the server has the new token, pushes won't reach us
+        SunshineSyncAdapter.configurePeriodicSync(context, SunshineSyncAdapter.SYNC_INTERVAL,
+                SunshineSyncAdapter.SYNC_FLEXTIME);
+        scheduleRegistration(context);
+    }
+
+    /**
+     * @return true if our server has acknowledged the token for this version of the app, so
+     * new forecasts are pushed to us
+     */
+    public static boolean isRegistered(Context context) {
+        SharedPreferences prefs = getPrefs(context);
+        return prefs.getBoolean(KEY_ACKNOWLEDGED, false)
+                && prefs.getInt(KEY_APP_VERSION, 0) == BuildConfig.VERSION_CODE
+                && prefs.contains(KEY_TOKEN);
+    }
+
+    private static void scheduleRegistration(Context context) {
+        if (context.getString(R.string.gcm_defaultSenderId).length() == 0) {
+            return;
+        }
+        GcmNetworkManager.getInstance(context).schedule(new OneoffTask.Builder()
+                .setService(RegistrationTaskService.class)
+                .setTag(TASK_TAG)
+                .setExecutionWindow(WINDOW_START_SECONDS, WINDOW_END_SECONDS)
+                .setRequiredNetwork(Task.NETWORK_STATE_CONNECTED)
+                .setPersisted(true)
+                .setUpdateCurrent(true)
+                .build());
+    }
+
+    /**
+     * Fetches the token if needed and sends it to our server.  Blocks on the network.
+     *
+     * @return true when done, false if it should be tried again later
+     */
+    static synchronized boolean register(Context context) {
+        if (isRegistered(context)) {
+            return true;
+        }
+        SharedPreferences prefs = getPrefs(context);
+        try {
+            // Initially this call goes out to the network to retrieve the token, subsequent calls
+            // are local.
+            String token = InstanceID.getInstance(context).getToken(
+                    context.getString(R.string.gcm_defaultSenderId),
+                    GoogleCloudMessaging.INSTANCE_ID_SCOPE, null);
+            // Store the token before sending it, so it isn't fetched again if sending fails
+            prefs.edit()
+                    .putString(KEY_TOKEN, token)
+                    .putInt(KEY_APP_VERSION, BuildConfig.VERSION_CODE)
+                    .apply();
+
+            sendRegistrationToServer(token);
+            prefs.edit().putBoolean(KEY_ACKNOWLEDGED, true).apply();
+        } catch (Exception e) {
+            Log.d(TAG, "Failed to complete token refresh", e);
+            return false;
+        }
+
+        // New forecasts are pushed to us from now on, polling is only a fallback
+        SunshineSyncAdapter.configurePeriodicSync(context, SunshineSyncAdapter.PUSH_SYNC_INTERVAL,
+                SunshineSyncAdapter.PUSH_SYNC_FLEXTIME);
+        return true;
+    }
+
+    /**
+     * Normally, you would want to persist the registration to third-party servers. Because we do
+     * not have a server, and are faking it with a website, you'll want to log the token instead.
+     * That way you can see the value in logcat, and note it for future use in the website.
+     *
+     * @param token The new token.
+     */
+    private static void sendRegistrationToServer(String token) {
+        Log.i(TAG, "GCM Registration Token: " + token);
+    }
+
+    private static SharedPreferences getPrefs(Context context) {
+        return PreferenceManager.getDefaultSharedPreferences(context);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import com.google.android.gms.gcm.GcmNetworkManager;
+import com.google.android.gms.gcm.GcmTaskService;
+import com.google.android.gms.gcm.TaskParams;
+
+/**
+ * Runs the registration scheduled by {@link RegistrationManager} once the device is online,
+ * and asks for it to be retried with backoff if it fails.
+ */
+public class RegistrationTaskService extends GcmTaskService {
+
+    @Override
+    public int onRunTask(TaskParams params) {
+        return RegistrationManager.register(this)
+                ? GcmNetworkManager.RESULT_SUCCESS : GcmNetworkManager.RESULT_RESCHEDULE;
+    }
+
+    @Override
+    public void onInitializeTasks() {
+        // Scheduled tasks are dropped when the app is updated, schedule again if still needed
+        RegistrationManager.onAppStart(this);
+    }
+}
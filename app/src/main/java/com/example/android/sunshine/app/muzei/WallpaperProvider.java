@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapTransformation;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.R;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Serves the weather wallpapers to Muzei from local files.
+ *
+ * The source images are photos of several megabytes each.  The first time a condition needs
+ * one, it is downloaded once, scaled down to about the size of the screen and saved as a JPEG.
+ * After that, Muzei reads the file through this provider, so a change of wallpaper costs no
+ * network.  There are only a handful of conditions, so the files are never evicted.
+ *
+ * The provider is exported so that Muzei can read it, but only serves those files, read only.
+ */
+public class WallpaperProvider extends ContentProvider {
+    private static final String LOG_TAG = WallpaperProvider.class.getSimpleName();
+
+    private static final String DIRECTORY = "wallpapers";
+    private static final String EXTENSION = ".jpg";
+    private static final int JPEG_QUALITY = 90;
+
+    /**
+     * Returns a uri to the wallpaper for an image url, downloading and scaling it first if it
+     * isn't stored yet.  Blocks, so it must not be called from the UI thread.
+     *
+     * @return the local uri, or null if the image couldn't be fetched
+     */
+    public static Uri getWallpaperUri(Context context, String imageUrl) {
+        // The image is scaled to cover the screen, so Muzei only ever has to crop it
+        DisplayMetrics metrics = context.getResources().getDisplayMetrics();
+        int width = metrics.widthPixels;
+        int height = metrics.heightPixels;
+        String name = Integer.toHexString(imageUrl.hashCode()) + "_" + width + "x" + height
+                + EXTENSION;
+
+        File file = new File(getDirectory(context), name);
+        if (!file.exists() && !download(context, imageUrl, width, height, file)) {
+            return null;
+        }
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(context.getString(R.string.wallpaper_authority))
+                .appendPath(name)
+                .build();
+    }
+
+    private static File getDirectory(Context context) {
+        return new File(context.getFilesDir(), DIRECTORY);
+    }
+
+    private static boolean download(Context context, String imageUrl, int width, int height,
+                                    File file) {
+        File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(LOG_TAG, "Unable to create " + directory);
+            return false;
+        }
+        // Downsampling alone works in powers of two and leaves most art close to its original
+        // size, so the result is scaled down the rest of the way.  The source isn't worth
+        // keeping in Glide's disk cache since we keep the result ourselves.
+        FutureTarget<Bitmap> target = Glide.with(context)
+                .load(imageUrl)
+                .asBitmap()
+                .diskCacheStrategy(DiskCacheStrategy.NONE)
+                .transform(new CoverTransformation(context))
+                .into(width, height);
+        File temp = new File(directory, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            Bitmap bitmap = target.get();
+            out = new FileOutputStream(temp);
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("Unable to compress " + imageUrl);
+            }
+            out.close();
+            out = null;
+            // Renaming is atomic, Muzei never sees a partly written file
+            if (!temp.renameTo(file)) {
+                throw new IOException("Unable to rename " + temp);
+            }
+            return true;
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            Log.e(LOG_TAG, "Error storing wallpaper from " + imageUrl, e);
+            return false;
+        } finally {
+            Glide.clear(target);
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ignored) {
+                    // Nothing more to do, the temp file is removed below
+                }
+            }
+            if (temp.exists() && !temp.delete()) {
+                Log.w(LOG_TAG, "Unable to delete " + temp);
+            }
+        }
+    }
+
+    /**
+     * Scales an image down, keeping its aspect ratio, until it just covers the requested size.
+     * Images that are already smaller are left alone rather than scaled up.
+     */
+    private static class CoverTransformation extends BitmapTransformation {
+        CoverTransformation(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected Bitmap transform(BitmapPool pool, Bitmap toTransform, int outWidth,
+                                   int outHeight) {
+            float scale = Math.max((float) outWidth / toTransform.getWidth(),
+                    (float) outHeight / toTransform.getHeight());
+            if (scale >= 1) {
+                return toTransform;
+            }
+            return Bitmap.createScaledBitmap(toTransform,
+                    Math.round(toTransform.getWidth() * scale),
+                    Math.round(toTransform.getHeight() * scale), true);
+        }
+
+        @Override
+        public String getId() {
+            return "com.example.android.sunshine.app.muzei.CoverTransformation";
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        String name = uri.getLastPathSegment();
+        if (!"r".equals(mode) || name == null
+                || !name.matches("[0-9a-f]+_[0-9]+x[0-9]+\\" + EXTENSION)) {
+            throw new FileNotFoundException("No wallpaper for " + uri);
+        }
+        File file = new File(getDirectory(getContext()), name);
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Wallpapers are read only");
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Wallpapers are read only");
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Wallpapers are read only");
+    }
+}
@@ -18,7 +18,9 @@ package com.example.android.sunshine.app.muzei;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.text.TextUtils;
 
+import com.example.android.sunshine.app.ForecastEvents;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
@@ -26,6 +28,8 @@ import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.apps.muzei.api.Artwork;
 import com.google.android.apps.muzei.api.MuzeiArtSource;
 
+import java.util.List;
+
 /**
  * Muzei source that changes your background based on the current weather conditions
  */
@@ -55,25 +59,52 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
     @Override
     protected void onUpdate(int reason) {
         String location = Utility.getPreferredLocation(this);
+        // Use the stored forecast if all of it is in memory, or else the ContentProvider
+        ForecastEvents.ForecastChange latest = ForecastEvents.getLatest(location);
+        if (latest != null) {
+            List<ForecastEvents.Day> upcoming = latest.getUpcomingDays();
+            if (!upcoming.isEmpty()) {
+                ForecastEvents.Day today = upcoming.get(0);
+                publish(location, today.weatherId, today.description);
+            }
+            return;
+        }
+
         Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
                 location, System.currentTimeMillis());
         Cursor cursor = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
         if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            String desc = cursor.getString(INDEX_SHORT_DESC);
+            publish(location, cursor.getInt(INDEX_WEATHER_ID), cursor.getString(INDEX_SHORT_DESC));
+        }
+        cursor.close();
+    }
 
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
-                publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
-                        .title(desc)
-                        .byline(location)
-                        .viewIntent(new Intent(this, MainActivity.class))
-                        .build());
+    private void publish(String location, int weatherId, String desc) {
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        // Only publish a new wallpaper if we have a valid image, and if it's a different one
+        // than what's showing.  Each category of conditions has its own image, which is
+        // also used as the artwork's token.
+        Artwork current = getCurrentArtwork();
+        boolean unchanged = current != null
+                && TextUtils.equals(imageUrl, current.getToken())
+                && TextUtils.equals(location, current.getByline());
+        if (imageUrl != null && !unchanged) {
+            Uri imageUri = WallpaperProvider.getWallpaperUri(this, imageUrl);
+            if (imageUri == null) {
+                // Let Muzei try to download the original instead
+                imageUri = Uri.parse(imageUrl);
             }
+            publishArtwork(new Artwork.Builder()
+                    .imageUri(imageUri)
+                    .title(desc)
+                    .byline(location)
+                    .token(imageUrl)
+                    .viewIntent(new Intent(this, MainActivity.class))
+                    .build());
         }
-        cursor.close();
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.preference.PreferenceManager;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.TaskStackBuilder;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.AppSettings;
+import com.example.android.sunshine.app.ArtworkCache;
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Posts the daily weather notification, on its own thread.
+ *
+ * The sync hands over today's forecast as it parsed it, so nothing is queried again, and goes
+ * on without waiting for the large icon to load.  Large icons are kept at the notification's
+ * size, one per condition, so the next day with the same weather doesn't load or scale anything.
+ */
+public class WeatherNotifier {
+    private static final String LOG_TAG = WeatherNotifier.class.getSimpleName();
+
+    private static final int WEATHER_NOTIFICATION_ID = 3004;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Enough for every art resource, and for the remote art of a couple of art packs
+    private static final int MAX_ICONS = 16;
+
+    // Notifications are built one at a time, off the sync thread.  Being the only thread that
+    // reads and writes the last notification time, it doesn't need to wait for that write.
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
+    // Only touched from sExecutor
+    private static final LruCache<String, Bitmap> sLargeIcons =
+            new LruCache<String, Bitmap>(MAX_ICONS);
+
+    /**
+     * Shows today's weather, unless notifications are turned off or one was already shown in
+     * the last day.  Returns immediately.
+     */
+    public static void notifyToday(Context context, final int weatherId, final double high,
+                                   final double low, final String description) {
+        final Context appContext = context.getApplicationContext();
+        if (!AppSettings.get(appContext).notificationsEnabled) {
+            return;
+        }
+        sExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+                String lastNotificationKey = appContext.getString(R.string.pref_last_notification);
+                long now = System.currentTimeMillis();
+                if (now - prefs.getLong(lastNotificationKey, 0) < DAY_IN_MILLIS) {
+                    return;
+                }
+                show(appContext, weatherId, high, low, description);
+                prefs.edit().putLong(lastNotificationKey, now).apply();
+            }
+        });
+    }
+
+    private static void show(Context context, int weatherId, double high, double low,
+                             String description) {
+        Resources resources = context.getResources();
+        String title = context.getString(R.string.app_name);
+
+        // Define the text of the forecast.
+        String contentText = String.format(context.getString(R.string.format_notification),
+                description,
+                Utility.formatTemperature(context, high),
+                Utility.formatTemperature(context, low));
+
+        // NotificationCompatBuilder is a very convenient way to build backward-compatible
+        // notifications.  Just throw in some data.
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(context)
+                .setColor(resources.getColor(R.color.primary_light))
+                .setSmallIcon(Utility.getIconResourceForWeatherCondition(weatherId))
+                .setLargeIcon(getLargeIcon(context, weatherId))
+                .setContentTitle(title)
+                .setContentText(contentText);
+
+        // Make something interesting happen when the user clicks on the notification.
+        // In this case, opening the app is sufficient.  The stack builder makes navigating
+        // back from the Activity lead out of the application to the Home screen.
+        TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+        stackBuilder.addNextIntent(new Intent(context, MainActivity.class));
+        builder.setContentIntent(
+                stackBuilder.getPendingIntent(0, PendingIntent.FLAG_UPDATE_CURRENT));
+
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+        notificationManager.notify(WEATHER_NOTIFICATION_ID, builder.build());
+    }
+
+    private static Bitmap getLargeIcon(Context context, int weatherId) {
+        int width = ArtworkCache.getWidth(context, ArtworkCache.SURFACE_NOTIFICATION);
+        int height = ArtworkCache.getHeight(context, ArtworkCache.SURFACE_NOTIFICATION);
+        int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+        String artUrl = Utility.usingLocalGraphics(context)
+                ? null : Utility.getArtUrlForWeatherCondition(context, weatherId);
+        String key = (artUrl != null ? artUrl : "res:" + artResourceId) + '@' + width + 'x' + height;
+
+        Bitmap icon = sLargeIcons.get(key);
+        if (icon == null) {
+            icon = artUrl != null ? loadRemote(context, artUrl, width, height) : null;
+            if (icon == null) {
+                icon = loadLocal(context, artResourceId, width, height);
+            }
+            if (icon != null) {
+                sLargeIcons.put(key, icon);
+            }
+        }
+        return icon;
+    }
+
+    private static Bitmap loadRemote(Context context, String artUrl, int width, int height) {
+        // Usually already prefetched at this size
+        FutureTarget<Bitmap> target =
+                ArtworkCache.loadBitmap(context, artUrl, ArtworkCache.SURFACE_NOTIFICATION)
+                        .into(width, height);
+        try {
+            // Keep our own copy, Glide reuses its bitmap once the request is cleared
+            Bitmap loaded = target.get();
+            return loaded.copy(loaded.getConfig() != null
+                    ? loaded.getConfig() : Bitmap.Config.ARGB_8888, false);
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
+            return null;
+        } finally {
+            Glide.clear(target);
+        }
+    }
+
+    private static Bitmap loadLocal(Context context, int artResourceId, int width, int height) {
+        if (artResourceId == -1) {
+            return null;
+        }
+        Bitmap decoded = BitmapFactory.decodeResource(context.getResources(), artResourceId);
+        if (decoded == null || (decoded.getWidth() == width && decoded.getHeight() == height)) {
+            return decoded;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, width, height, true);
+        if (scaled != decoded) {
+            decoded.recycle();
+        }
+        return scaled;
+    }
+}
@@ -14,8 +14,8 @@ import android.widget.RemoteViews;
 
 import com.example.android.sunshine.app.DetailActivity;
 import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.PresentationSettings;
 import com.example.android.sunshine.app.R;
-import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
  * Provider for a scrollable weather detail widget
@@ -57,14 +57,25 @@ public class DetailWidgetProvider extends AppWidgetProvider {
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
-        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
-            int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
-                    new ComponentName(context, getClass()));
-            appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+        if (PresentationSettings.ACTION_PRESENTATION_CHANGED.equals(intent.getAction())) {
+            notifyDataChanged(context);
         }
     }
 
+    /**
+     * Asks every detail widget to reload its list.
+     */
+    public static void notifyDataChanged(Context context) {
+        // The widget is only enabled from Honeycomb on
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        int[] appWidgetIds = appWidgetManager.getAppWidgetIds(
+                new ComponentName(context, DetailWidgetProvider.class));
+        appWidgetManager.notifyAppWidgetViewDataChanged(appWidgetIds, R.id.widget_list);
+    }
+
     /**
      * Sets the remote adapter used to fill in the list items
      *
@@ -1,24 +1,26 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
+import android.util.SparseArray;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.ArtworkCache;
+import com.example.android.sunshine.app.ForecastEvents;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
@@ -27,7 +29,6 @@ import java.util.concurrent.ExecutionException;
 public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public final String LOG_TAG = DetailWidgetRemoteViewsService.class.getSimpleName();
     private static final String[] FORECAST_COLUMNS = {
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
             WeatherContract.WeatherEntry.COLUMN_DATE,
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
@@ -35,17 +36,47 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
     };
     // these indices must match the projection
-    static final int INDEX_WEATHER_ID = 0;
-    static final int INDEX_WEATHER_DATE = 1;
-    static final int INDEX_WEATHER_CONDITION_ID = 2;
-    static final int INDEX_WEATHER_DESC = 3;
-    static final int INDEX_WEATHER_MAX_TEMP = 4;
-    static final int INDEX_WEATHER_MIN_TEMP = 5;
+    static final int INDEX_WEATHER_DATE = 0;
+    static final int INDEX_WEATHER_CONDITION_ID = 1;
+    static final int INDEX_WEATHER_DESC = 2;
+    static final int INDEX_WEATHER_MAX_TEMP = 3;
+    static final int INDEX_WEATHER_MIN_TEMP = 4;
+
+    /**
+     * Everything one row shows, formatted ahead of time.
+     */
+    private static final class Row {
+        // The day, which stays the same across syncs, unlike the row id in the database
+        final long id;
+        final int artResourceId;
+        final Bitmap art;
+        final String description;
+        final String formattedDate;
+        final String formattedMaxTemperature;
+        final String formattedMinTemperature;
+        final Uri weatherUri;
+
+        Row(long id, int artResourceId, Bitmap art, String description, String formattedDate,
+            String formattedMaxTemperature, String formattedMinTemperature, Uri weatherUri) {
+            this.id = id;
+            this.artResourceId = artResourceId;
+            this.art = art;
+            this.description = description;
+            this.formattedDate = formattedDate;
+            this.formattedMaxTemperature = formattedMaxTemperature;
+            this.formattedMinTemperature = formattedMinTemperature;
+            this.weatherUri = weatherUri;
+        }
+    }
+
+    private static final Row[] NO_ROWS = new Row[0];
 
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            // Replaced as a whole by onDataSetChanged and never modified, so the binder threads
+            // calling getViewAt can read it without locking
+            private volatile Row[] rows = NO_ROWS;
 
             @Override
             public void onCreate() {
@@ -54,92 +85,112 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
+                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                // Use the stored forecast if all of it is in memory, since a push may only
+                // have written a few days, or else the ContentProvider
+                ForecastEvents.ForecastChange latest = ForecastEvents.getLatest(location);
+                List<ForecastEvents.Day> days = latest != null
+                        ? latest.getUpcomingDays() : queryDays(location);
+                rows = days == null ? NO_ROWS : buildRows(days, location);
+            }
+
+            private List<ForecastEvents.Day> queryDays(String location) {
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
-                String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
+                Cursor data = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                if (data == null) {
+                    return null;
+                }
+                try {
+                    List<ForecastEvents.Day> days =
+                            new ArrayList<ForecastEvents.Day>(data.getCount());
+                    while (data.moveToNext()) {
+                        days.add(new ForecastEvents.Day(data.getLong(INDEX_WEATHER_DATE),
+                                data.getInt(INDEX_WEATHER_CONDITION_ID),
+                                data.getString(INDEX_WEATHER_DESC),
+                                data.getDouble(INDEX_WEATHER_MAX_TEMP),
+                                data.getDouble(INDEX_WEATHER_MIN_TEMP)));
+                    }
+                    return days;
+                } finally {
+                    data.close();
+                }
+            }
+
+            /**
+             * Formats every row up front, so that getViewAt only has to copy fields into the
+             * RemoteViews.  All the art is resolved here too, once per refresh.
+             */
+            private Row[] buildRows(List<ForecastEvents.Day> days, String location) {
+                Context context = DetailWidgetRemoteViewsService.this;
+                int count = days.size();
+                int[] weatherIds = new int[count];
+                for (int i = 0; i < count; i++) {
+                    weatherIds[i] = days.get(i).weatherId;
+                }
+                SparseArray<Bitmap> art = WidgetArtCache.getArt(context, weatherIds,
+                        ArtworkCache.SURFACE_LIST_ICON);
+
+                Row[] newRows = new Row[count];
+                for (int i = 0; i < count; i++) {
+                    ForecastEvents.Day day = days.get(i);
+                    newRows[i] = new Row(day.date,
+                            Utility.getIconResourceForWeatherCondition(day.weatherId),
+                            art.get(day.weatherId),
+                            day.description,
+                            Utility.getFriendlyDayString(context, day.date, false),
+                            Utility.formatTemperature(context, day.high),
+                            Utility.formatTemperature(context, day.low),
+                            WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                                    location, day.date));
+                }
+                return newRows;
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                rows = NO_ROWS;
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return rows.length;
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                Row[] rows = this.rows;
+                if (position == AdapterView.INVALID_POSITION || position >= rows.length) {
                     return null;
                 }
+                Row row = rows[position];
                 RemoteViews views = new RemoteViews(getPackageName(),
                         R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+                if (row.art != null) {
+                    views.setImageViewBitmap(R.id.widget_icon, row.art);
                 } else {
-                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+                    views.setImageViewResource(R.id.widget_icon, row.artResourceId);
                 }
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                    setRemoteContentDescription(views, description);
+                    setRemoteContentDescription(views, row.description);
                 }
-                views.setTextViewText(R.id.widget_date, formattedDate);
-                views.setTextViewText(R.id.widget_description, description);
-                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+                views.setTextViewText(R.id.widget_date, row.formattedDate);
+                views.setTextViewText(R.id.widget_description, row.description);
+                views.setTextViewText(R.id.widget_high_temperature, row.formattedMaxTemperature);
+                views.setTextViewText(R.id.widget_low_temperature, row.formattedMinTemperature);
 
                 final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
-                        dateInMillis);
-                fillInIntent.setData(weatherUri);
+                fillInIntent.setData(row.weatherUri);
                 views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
                 return views;
             }
@@ -161,9 +212,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
-                return position;
+                Row[] rows = this.rows;
+                return position < rows.length ? rows[position].id : position;
             }
 
             @Override
@@ -20,77 +20,121 @@ import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
+import com.example.android.sunshine.app.ForecastEvents;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.List;
+
 /**
  * IntentService which handles updating all Today widgets with the latest data
+ *
+ * Updates are requested for every sync, every settings change and every resize, often several
+ * in a row.  A request that was made before the last update started is dropped, since that
+ * update already saw everything it asked for.  Each layout is built once and sent to all the
+ * widgets using it, and widgets whose layout and contents are the same as last time aren't sent
+ * anything.
  */
 public class TodayWidgetIntentService extends IntentService {
+    // Set only when the request is made through requestUpdate
+    private static final String EXTRA_REQUESTED_AT = "requested_at";
+    // Resend to every widget, because the host may have lost what it was showing
+    private static final String EXTRA_FORCE = "force";
+
     private static final String[] FORECAST_COLUMNS = {
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_DATE
     };
     // these indices must match the projection
     private static final int INDEX_WEATHER_ID = 0;
     private static final int INDEX_SHORT_DESC = 1;
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_DATE = 4;
+
+    // Only touched from the service's worker thread.  Whatever each widget was last sent,
+    // keyed by widget id, and when the last update started.
+    private static final SparseArray<String> sRendered = new SparseArray<String>();
+    private static long sLastUpdateStartedAt;
 
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
+    /**
+     * Asks for all the Today widgets to be brought up to date.
+     *
+     * @param force true to resend even to the widgets that look up to date
+     */
+    public static void requestUpdate(Context context, boolean force) {
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(EXTRA_REQUESTED_AT, SystemClock.elapsedRealtime())
+                .putExtra(EXTRA_FORCE, force));
+    }
+
     @Override
     protected void onHandleIntent(Intent intent) {
+        boolean force = intent.getBooleanExtra(EXTRA_FORCE, false);
+        long requestedAt = intent.getLongExtra(EXTRA_REQUESTED_AT, Long.MAX_VALUE);
+        if (force) {
+            sRendered.clear();
+        } else if (requestedAt < sLastUpdateStartedAt) {
+            // Coalesced into an update that started after this request was made
+            return;
+        }
+        sLastUpdateStartedAt = SystemClock.elapsedRealtime();
+
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
+        forgetRemovedWidgets(appWidgetIds);
 
-        // Get today's data from the ContentProvider
+        // Get today's data from the stored forecast if all of it is in memory, or else the
+        // ContentProvider
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
-        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
-                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
-        if (data == null) {
-            return;
-        }
-        if (!data.moveToFirst()) {
-            data.close();
+        ForecastEvents.Day today = getToday(location);
+        if (today == null) {
             return;
         }
+        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(today.weatherId);
+        String description = today.description;
+        String formattedMaxTemperature = Utility.formatTemperature(this, today.high);
+        String formattedMinTemperature = Utility.formatTemperature(this, today.low);
+
+        // Everything the widget shows apart from the layout, which is added per widget below.
+        // The formatted temperatures already account for the units.
+        String contents = weatherArtResourceId + "|" + description + "|"
+                + formattedMaxTemperature + "|" + formattedMinTemperature;
 
-        // Extract the weather data from the Cursor
-        int weatherId = data.getInt(INDEX_WEATHER_ID);
-        int weatherArtResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-        String description = data.getString(INDEX_SHORT_DESC);
-        double maxTemp = data.getDouble(INDEX_MAX_TEMP);
-        double minTemp = data.getDouble(INDEX_MIN_TEMP);
-        String formattedMaxTemperature = Utility.formatTemperature(this, maxTemp);
-        String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
-        data.close();
-
-        // Perform this loop procedure for each Today widget
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+
+        // Find the correct layout for each Today widget, based on its width, skipping the ones
+        // that already show exactly this
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        SparseArray<RemoteViews> layouts = new SparseArray<RemoteViews>(3);
         for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
             int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
             int layoutId;
             if (widgetWidth >= largeWidth) {
                 layoutId = R.layout.widget_today_large;
@@ -99,25 +143,81 @@ public class TodayWidgetIntentService extends IntentService {
             } else {
                 layoutId = R.layout.widget_today_small;
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
-
-            // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
+            String rendered = layoutId + "|" + contents;
+            if (rendered.equals(sRendered.get(appWidgetId))) {
+                continue;
             }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
 
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+            RemoteViews views = layouts.get(layoutId);
+            if (views == null) {
+                views = buildViews(layoutId, weatherArtResourceId, description,
+                        formattedMaxTemperature, formattedMinTemperature, pendingIntent);
+                layouts.put(layoutId, views);
+            }
 
             // Tell the AppWidgetManager to perform an update on the current app widget
             appWidgetManager.updateAppWidget(appWidgetId, views);
+            sRendered.put(appWidgetId, rendered);
+        }
+    }
+
+    private ForecastEvents.Day getToday(String location) {
+        ForecastEvents.ForecastChange latest = ForecastEvents.getLatest(location);
+        if (latest != null) {
+            List<ForecastEvents.Day> upcoming = latest.getUpcomingDays();
+            if (!upcoming.isEmpty()) {
+                return upcoming.get(0);
+            }
+        }
+
+        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                location, System.currentTimeMillis());
+        Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
+                null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (data == null) {
+            return null;
+        }
+        try {
+            if (!data.moveToFirst()) {
+                return null;
+            }
+            return new ForecastEvents.Day(data.getLong(INDEX_DATE), data.getInt(INDEX_WEATHER_ID),
+                    data.getString(INDEX_SHORT_DESC), data.getDouble(INDEX_MAX_TEMP),
+                    data.getDouble(INDEX_MIN_TEMP));
+        } finally {
+            data.close();
+        }
+    }
+
+    private RemoteViews buildViews(int layoutId, int weatherArtResourceId, String description,
+                                   String formattedMaxTemperature, String formattedMinTemperature,
+                                   PendingIntent pendingIntent) {
+        RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, description);
+        }
+        views.setTextViewText(R.id.widget_description, description);
+        views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
+    }
+
+    private static void forgetRemovedWidgets(int[] appWidgetIds) {
+        SparseArray<String> current = new SparseArray<String>(appWidgetIds.length);
+        for (int appWidgetId : appWidgetIds) {
+            String rendered = sRendered.get(appWidgetId);
+            if (rendered != null) {
+                current.put(appWidgetId, rendered);
+            }
+        }
+        sRendered.clear();
+        for (int i = 0; i < current.size(); i++) {
+            sRendered.put(current.keyAt(i), current.valueAt(i));
         }
     }
 
@@ -22,7 +22,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 
-import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.PresentationSettings;
 
 /**
  * Provider for a horizontally expandable widget showing today's weather.
@@ -34,20 +34,21 @@ public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // New widgets, or a host that was restarted, have nothing to show yet
+        TodayWidgetIntentService.requestUpdate(context, true);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        TodayWidgetIntentService.requestUpdate(context, false);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
-        if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+        if (PresentationSettings.ACTION_PRESENTATION_CHANGED.equals(intent.getAction())) {
+            TodayWidgetIntentService.requestUpdate(context, false);
         }
     }
 }
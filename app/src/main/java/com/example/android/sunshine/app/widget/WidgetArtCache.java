@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+import android.util.SparseArray;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.ArtworkCache;
+import com.example.android.sunshine.app.Utility;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Remote art for the widgets, already scaled to the size it's shown at.
+ *
+ * Every bitmap set on a RemoteViews is copied to the launcher, so the widgets only ever ship
+ * art at the icon's pixel size, and keep their own copy of it so that refreshing a widget
+ * doesn't go back to Glide for images it already has.  The copies are owned by this cache
+ * rather than borrowed from Glide's pool, which would reuse them once the request is cleared.
+ */
+class WidgetArtCache {
+    private static final String LOG_TAG = WidgetArtCache.class.getSimpleName();
+
+    // A handful of conditions, at most a few surfaces each, is a few hundred kilobytes at most
+    private static final int MAX_BYTES = 1024 * 1024;
+
+    private static final LruCache<String, Bitmap> sCache = new LruCache<String, Bitmap>(MAX_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getRowBytes() * value.getHeight();
+        }
+    };
+
+    /**
+     * Resolves the art for every condition, loading whatever isn't cached yet.  Blocks, so it
+     * must not be called from the UI thread.
+     *
+     * @param weatherIds OpenWeatherMap condition ids, duplicates are fine
+     * @param surface One of the {@link ArtworkCache} surfaces, which sets the size
+     * @return the art keyed by condition id, empty when the local graphics are in use.  Conditions
+     * whose art couldn't be loaded are left out, so callers fall back to the local icon.
+     */
+    static SparseArray<Bitmap> getArt(Context context, int[] weatherIds, int surface) {
+        SparseArray<Bitmap> art = new SparseArray<Bitmap>();
+        if (Utility.usingLocalGraphics(context)) {
+            return art;
+        }
+        for (int weatherId : weatherIds) {
+            if (art.indexOfKey(weatherId) >= 0) {
+                continue;
+            }
+            String url = Utility.getArtUrlForWeatherCondition(context, weatherId);
+            if (url == null) {
+                continue;
+            }
+            Bitmap bitmap = getBitmap(context, url, surface);
+            if (bitmap != null) {
+                art.put(weatherId, bitmap);
+            }
+        }
+        return art;
+    }
+
+    private static Bitmap getBitmap(Context context, String url, int surface) {
+        int width = ArtworkCache.getWidth(context, surface);
+        int height = ArtworkCache.getHeight(context, surface);
+        // The url already names the art pack and the condition
+        String key = url + '@' + width + 'x' + height;
+        Bitmap bitmap = sCache.get(key);
+        if (bitmap != null) {
+            return bitmap;
+        }
+
+        FutureTarget<Bitmap> target = ArtworkCache.loadBitmap(context, url, surface)
+                .into(width, height);
+        try {
+            Bitmap loaded = target.get();
+            bitmap = loaded.copy(loaded.getConfig() != null
+                    ? loaded.getConfig() : Bitmap.Config.ARGB_8888, false);
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving widget art from " + url, e);
+            return null;
+        } finally {
+            Glide.clear(target);
+        }
+        if (bitmap != null) {
+            sCache.put(key, bitmap);
+        }
+        return bitmap;
+    }
+}
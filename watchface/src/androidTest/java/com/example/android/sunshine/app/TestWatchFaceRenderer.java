@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+
+import java.util.Calendar;
+
+/*
+    Draws the watch face into a bitmap the way the engine does, twice a second, and checks that
+    frames don't allocate once the first one has been drawn.
+ */
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    private static final int SIZE = 320;
+    private static final long FRAME_MILLIS = 500;
+
+    private WatchFaceRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private long mStart;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new WatchFaceRenderer(getContext());
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+
+        // Midday, so the frames below don't cross into another day
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 12);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 50);
+        mStart = calendar.getTimeInMillis();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    private WeatherSnapshot createWeather(int weatherId, double tempMax, double tempMin) {
+        return WeatherSnapshot.create(getContext().getResources(), mStart, "Mountain View",
+                weatherId, tempMax, tempMin, null);
+    }
+
+    public void testFormatTemperature() {
+        char[] out = new char[8];
+        double[] temperatures = {0, 7.4, 21.5, 99.6, 100, -3.2, -12.7, -0.2};
+        String[] expected = {"0°", "7°", "22°", "100°", "100°", "-3°", "-13°", "0°"};
+        for (int i = 0; i < temperatures.length; i++) {
+            int length = WeatherSnapshot.formatTemperature(temperatures[i], out);
+            assertEquals(expected[i], new String(out, 0, length));
+        }
+    }
+
+    // The Debug alloc counters are deprecated, but still count per thread on the devices we run on
+    @SuppressWarnings("deprecation")
+    public void testFramesDoNotAllocate() {
+        WeatherSnapshot weather = createWeather(800, 21.4, 12.6);
+        // The first frame formats the date
+        mRenderer.draw(mCanvas, mBounds, mStart, false, weather);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        try {
+            // Two minutes, in and out of ambient mode
+            for (int i = 0; i < 240; i++) {
+                mRenderer.draw(mCanvas, mBounds, mStart + i * FRAME_MILLIS, i % 60 >= 50,
+                        weather);
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        assertEquals("Error: Frames allocated objects", 0, Debug.getThreadAllocCount());
+    }
+
+    public void testWeatherUpdateRedrawsLayer() {
+        WeatherSnapshot weather = createWeather(800, 21.4, 12.6);
+        mRenderer.draw(mCanvas, mBounds, mStart, false, weather);
+        Bitmap before = mBitmap.copy(Bitmap.Config.ARGB_8888, false);
+
+        mRenderer.draw(mCanvas, mBounds, mStart, false, weather);
+        assertTrue("Error: Same frame drawn differently from the cached layer",
+                before.sameAs(mBitmap));
+
+        mRenderer.draw(mCanvas, mBounds, mStart, false, createWeather(500, -5, -12));
+        assertFalse("Error: New weather not drawn", before.sameAs(mBitmap));
+        before.recycle();
+    }
+}
@@ -20,18 +20,11 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.content.res.Resources;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
-import android.support.v4.content.ContextCompat;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.util.Log;
@@ -53,9 +46,9 @@ import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.Wearable;
 
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Digital watch face
@@ -66,24 +59,14 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
     private static final String TAG = "SunshineWatch";
 
-    // Typefaces used
-    private static final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-    private static final Typeface BOLD_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
-
     // Update rate in milliseconds for interactive mode.
     private static final long INTERACTIVE_UPDATE_RATE_MS = 500;
 
     // Handler message id for updating the time periodically in interactive mode.
     private static final int MSG_UPDATE_TIME = 0;
 
-    // Weather DataItem keywords
-    private static final String PATH_SUNSHINE_WEATHER = "/Sunshine/Weather";
-    private static final String WEATHER_TIMESTAMP = "WEATHER_TIMESTAMP";
-    private static final String CITY_NAME = "CITY_NAME";
-    private static final String WEATHER_ID = "WEATHER_ID";
-    private static final String TEMP_MAX = "TEMP_MAX";
-    private static final String TEMP_MIN = "TEMP_MIN";
-
+    // Turns received weather into snapshots, off the thread the data layer calls back on
+    private static final ExecutorService sWeatherExecutor = Executors.newSingleThreadExecutor();
 
     @Override
     public Engine onCreateEngine() {
@@ -117,16 +100,11 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener {
 
-        Calendar mCalendar;
-        SimpleDateFormat mDateFormat;
+        WatchFaceRenderer mRenderer;
 
-        // Weather data sent through Wearable Data Layer
-        boolean mWeatherInit = false;
-        long mWeatherTimestamp;
-        String mCityName;
-        int mWeatherId;
-        double mTempMax;
-        double mTempMin;
+        // Weather data sent through Wearable Data Layer, null until some has been received.
+        // Only ever replaced as a whole, so a frame sees one update or the other, never a mix.
+        volatile WeatherSnapshot mWeather;
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
 
@@ -142,48 +120,17 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         // Whether the display supports fewer bits for each color in ambient mode.
         // When true, we disable anti-aliasing in ambient mode.
         boolean mLowBitAmbient;
+        boolean mAmbient;
 
         // Handles time zone changes
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
                 invalidate();
             }
         };
 
-        Paint mBackgroundPaint;
-        Paint mHourPaint;
-        Paint mMinutePaint;
-        Paint mSecondPaint;         // not used in this version
-        Paint mDayPeriodPaint;      // not used in this version
-        Paint mDatePaint;
-        Paint mTempHighPaint;
-        Paint mTempLowPaint;
-        boolean mAmbient;
-
-        boolean mShouldDrawColons;
-
-        // dimensions
-        float mHourWidth;
-        float mTimeYOffset;
-        float mTimeXSpace;
-        float mColonWidth;
-
-        float mDateWidth;
-        float mDateYOffset;
-
-        float mWeatherXSpace;
-        float mWeatherYSpace;
-
-        Bitmap mWeatherBitmap;
-        float mWeatherBitmapWidth;
-        float mWeatherBitmapHeight;
-
-        float mTempHighHeight;
-        float mTempHighWidth;
-        float mTempLowWidth;
-
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
@@ -195,64 +142,16 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                     .setHotwordIndicatorGravity(Gravity.RIGHT)
                     .build());
 
-            Resources resources = SunshineWatchFace.this.getResources();
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(ContextCompat.getColor(getApplicationContext(), R.color.background));
-
-            mHourPaint = createTextPaint(
-                    ContextCompat.getColor(getApplicationContext(), R.color.digital_text),
-                    BOLD_TYPEFACE,
-                    resources.getDimension(R.dimen.time_size));
-
-            mMinutePaint = createTextPaint(
-                    ContextCompat.getColor(getApplicationContext(), R.color.digital_text),
-                    NORMAL_TYPEFACE,
-                    resources.getDimension(R.dimen.time_size));
-
-            mDatePaint = createTextPaint(
-                    ContextCompat.getColor(getApplicationContext(), R.color.digital_text_light),
-                    NORMAL_TYPEFACE,
-                    resources.getDimension(R.dimen.date_size));
-
-            mTempHighPaint = createTextPaint(
-                    ContextCompat.getColor(getApplicationContext(), R.color.digital_text),
-                    BOLD_TYPEFACE,
-                    resources.getDimension(R.dimen.temperature_size));
-
-            mTempLowPaint = createTextPaint(
-                    ContextCompat.getColor(getApplicationContext(), R.color.digital_text_light),
-                    NORMAL_TYPEFACE,
-                    resources.getDimension(R.dimen.temperature_size));
-
-            // allocate a Calendar to calculate local time using the UTC time and time zone
-            mCalendar = Calendar.getInstance();
-            mDateFormat = new SimpleDateFormat("EEE d MMM yyyy");
+            mRenderer = new WatchFaceRenderer(SunshineWatchFace.this);
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mRenderer.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(NORMAL_TYPEFACE);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
-        private Paint createTextPaint(int textColor, Typeface typeface, float textSize) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(typeface);
-            paint.setTextSize(textSize);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             Log.d(TAG, "onVisibilityChanged: ");
@@ -264,7 +163,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
+                mRenderer.setTimeZone(TimeZone.getDefault());
             } else {
                 unregisterReceiver();
 
@@ -303,40 +202,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFace.this.getResources();
-
-//            // Screen info
-//            DisplayMetrics metrics = resources.getDisplayMetrics();
-//            Log.d(TAG, "onApplyWindowInsets: ddpi " + metrics.densityDpi);
-//            Log.d(TAG, "onApplyWindowInsets:    h " + metrics.heightPixels);
-//            Log.d(TAG, "onApplyWindowInsets:    w " + metrics.widthPixels);
-
-            // boolean isRound = insets.isRound();
-
-            // Time line (middle one in this design)
-            mTimeYOffset = resources.getDimension(R.dimen.time_y_offset);
-            mTimeXSpace = resources.getDimension(R.dimen.time_x_space);
-            mColonWidth = mHourPaint.measureText(":");
-
-            // Date line (upper line)
-            mDateYOffset = resources.getDimension(R.dimen.date_y_offset);
-
-            // Weather line (bottom line)
-            mWeatherYSpace = resources.getDimension(R.dimen.weather_y_space);
-            mWeatherXSpace = resources.getDimension(R.dimen.weather_x_space);
-            Log.d(TAG, "onApplyWindowInsets:   wXSp " + mWeatherXSpace);
-            Log.d(TAG, "onApplyWindowInsets:   wYSp " + mWeatherYSpace);
-
-            mWeatherBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.ic_clear);
-            mWeatherBitmapWidth = mWeatherBitmap.getWidth();
-            mWeatherBitmapHeight = mWeatherBitmap.getHeight();
-            Log.d(TAG, "onApplyWindowInsets: icon W " + mWeatherBitmapWidth);
-            Log.d(TAG, "onApplyWindowInsets: icon H " + mWeatherBitmapHeight);
-
-            mTempHighHeight = - mTempHighPaint.ascent();
-            Log.d(TAG, "onDraw: text H " + mTempHighHeight);
-            Log.d(TAG, "onDraw: text A " + mTempHighPaint.ascent());
-            Log.d(TAG, "onDraw: text D " + mTempHighPaint.descent());
+            mRenderer.loadDimensions();
         }
 
         @Override
@@ -358,10 +224,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mHourPaint.setAntiAlias(!inAmbientMode);
-                    mMinutePaint.setAntiAlias(!inAmbientMode);
-                }
+                mRenderer.setAmbient(inAmbientMode, mLowBitAmbient);
                 invalidate();
             }
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -371,108 +234,7 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            // Update the time
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
-
-            // Draw HH:MM in ambient mode / interactive mode.
-            String hour = String.format("%02d", mCalendar.get(Calendar.HOUR_OF_DAY));
-            mHourWidth = mHourPaint.measureText(hour);
-            canvas.drawText(hour,
-                    bounds.centerX() - mHourWidth - mTimeXSpace - mColonWidth / 2,
-                    bounds.centerY() + mTimeYOffset,
-                    mHourPaint);
-
-            String minute = String.format("%02d", mCalendar.get(Calendar.MINUTE));
-            canvas.drawText(minute,
-                    bounds.centerX() + mColonWidth / 2 + mTimeXSpace,
-                    bounds.centerY() + mTimeYOffset,
-                    mMinutePaint);
-
-            // Draw Colon (every half second in interactive mode)
-            if (isInAmbientMode()) {
-                canvas.drawText(":",
-                        bounds.centerX() - mColonWidth / 2,
-                        bounds.centerY() + mTimeYOffset,
-                        mHourPaint);
-            } else {
-                mShouldDrawColons = (System.currentTimeMillis() % 1000) < 500;
-                if (mShouldDrawColons) {
-                    canvas.drawText(":",
-                            bounds.centerX() - mColonWidth / 2,
-                            bounds.centerY() + mTimeYOffset,
-                            mHourPaint);
-                }
-            }
-
-            // Display more info in interactive mode
-            if (!mAmbient) {
-
-                // Top line: date
-                String date = mDateFormat.format(mCalendar.getTime());
-                mDateWidth = mDatePaint.measureText(date);
-                canvas.drawText(date,
-                        bounds.centerX() - mDateWidth / 2,
-                        bounds.centerY() + mDateYOffset,
-                        mDatePaint);
-
-                //
-                // Bottom line: weather info
-                //
-                // mWeatherInit is used as a flag if weather data has been received at any point on the watch side.
-                //
-                // Weather data is sent on the app side by the SunshineSyncAdapter (every 3 hour, one way communication)
-                // or each time location is changed in the app settings (also useful for testing).
-                //
-                // The condition below could be extended to prevent display of weather data is outdated (based on the
-                // timestamp also transmitted by the app for instance).
-                //
-                if (mWeatherInit) {
-
-                    // Separator line
-                    float x = 1.25f * mWeatherXSpace;
-                    float y = mWeatherYSpace;
-                    canvas.drawLine(
-                            bounds.centerX() - x, bounds.centerY() + y,
-                            bounds.centerX() + x, bounds.centerY() + y,
-                            mTempLowPaint);
-
-                    // Weather info
-                    mWeatherBitmap = BitmapFactory.decodeResource(getResources(), getWeatherBitmapId(mWeatherId));
-                    String tempHigh = String.format("%1.0f°", mTempMax);
-                    String tempLow = String.format("%1.0f°", mTempMin);
-
-                    // Weather info dimensions
-                    mTempHighWidth = mTempHighPaint.measureText(tempHigh);
-                    mTempLowWidth = mTempHighPaint.measureText(tempLow);
-                    float weatherWidth = mWeatherBitmapWidth + mTempHighWidth + mTempLowWidth + 2* mWeatherXSpace;
-
-                    // left: weather bitmap
-                    canvas.drawBitmap(mWeatherBitmap,
-                            bounds.centerX() - weatherWidth / 2,
-                            bounds.centerY() + mWeatherYSpace,
-                            new Paint());
-
-                    // middle: temp high
-                    canvas.drawText(tempHigh,
-                            bounds.centerX() - weatherWidth / 2 + mWeatherBitmapWidth + mWeatherXSpace,
-                            bounds.centerY() + mWeatherYSpace + mWeatherBitmapHeight / 2 + mTempHighHeight / 2,
-                            mTempHighPaint);
-
-                    // right: temp low
-                    canvas.drawText(tempLow,
-                            bounds.centerX() - weatherWidth / 2 + mWeatherBitmapWidth + mTempHighWidth + 2 * mWeatherXSpace,
-                            bounds.centerY() + mWeatherYSpace + mWeatherBitmapHeight / 2 + mTempHighHeight / 2,
-                            mTempLowPaint);
-                }
-            }
+            mRenderer.draw(canvas, bounds, System.currentTimeMillis(), mAmbient, mWeather);
         }
 
         /**
@@ -539,54 +301,30 @@ public class SunshineWatchFace extends CanvasWatchFaceService {
         public void onDataChanged(DataEventBuffer dataEventBuffer) {
             Log.d(TAG, "onDataChanged: " + dataEventBuffer);
 
+            // The buffer is released once this returns, so keep a frozen copy of the latest item
+            DataItem latest = null;
             for (DataEvent event : dataEventBuffer) {
                 DataItem item = event.getDataItem();
-                if (item.getUri().getPath().equals(PATH_SUNSHINE_WEATHER)) {
-                    DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
-
-                    mWeatherInit = true;
-                    mWeatherTimestamp = dataMap.getLong(WEATHER_TIMESTAMP);
-                    mCityName = dataMap.getString(CITY_NAME);
-                    mWeatherId = dataMap.getInt(WEATHER_ID);
-                    mTempMax = dataMap.getDouble(TEMP_MAX);
-                    mTempMin = dataMap.getDouble(TEMP_MIN);
+                if (item.getUri().getPath().equals(WeatherSnapshot.PATH_SUNSHINE_WEATHER)) {
+                    latest = item.freeze();
                 }
             }
-
-            Log.d(TAG, "onDataChanged: TimeStamp= " + mWeatherTimestamp);
-            Log.d(TAG, "onDataChanged:      city= " + mCityName);
-            Log.d(TAG, "onDataChanged: WeatherId= " + mWeatherId);
-            Log.d(TAG, "onDataChanged:   tempMax= " + mTempMax);
-            Log.d(TAG, "onDataChanged:   tempMin= " + mTempMin);
-        }
-
-        private int getWeatherBitmapId(int weatherId) {
-            // Based on weather code data found at:
-            // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
-            if (weatherId >= 200 && weatherId <= 232) {
-                return R.drawable.ic_storm;
-            } else if (weatherId >= 300 && weatherId <= 321) {
-                return R.drawable.ic_light_rain;
-            } else if (weatherId >= 500 && weatherId <= 504) {
-                return R.drawable.ic_rain;
-            } else if (weatherId == 511) {
-                return R.drawable.ic_snow;
-            } else if (weatherId >= 520 && weatherId <= 531) {
-                return R.drawable.ic_rain;
-            } else if (weatherId >= 600 && weatherId <= 622) {
-                return R.drawable.ic_snow;
-            } else if (weatherId >= 701 && weatherId <= 761) {
-                return R.drawable.ic_fog;
-            } else if (weatherId == 761 || weatherId == 781) {
-                return R.drawable.ic_storm;
-            } else if (weatherId == 800) {
-                return R.drawable.ic_clear;
-            } else if (weatherId == 801) {
-                return R.drawable.ic_light_clouds;
-            } else if (weatherId >= 802 && weatherId <= 804) {
-                return R.drawable.ic_cloudy;
+            if (latest == null) {
+                return;
             }
-            return R.drawable.ic_unknown;
+
+            final DataItem weatherItem = latest;
+            sWeatherExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    DataMap dataMap = DataMapItem.fromDataItem(weatherItem).getDataMap();
+                    WeatherSnapshot weather =
+                            WeatherSnapshot.fromDataMap(getResources(), dataMap, mWeather);
+                    mWeather = weather;
+                    Log.d(TAG, "onDataChanged: " + weather);
+                    postInvalidate();
+                }
+            });
         }
 
     }
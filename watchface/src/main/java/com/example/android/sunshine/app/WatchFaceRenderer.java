@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.support.v4.content.ContextCompat;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Draws the watch face.  The engine deals with the watch face lifecycle and the data layer, and
+ * hands the time and the weather over to this.
+ *
+ * Drawing a frame doesn't allocate anything, since it runs twice a second in interactive mode.
+ * The weather comes as a {@link WeatherSnapshot} that is ready to be drawn, the time is written
+ * into reused char buffers and the date is formatted once a day.
+ *
+ * What the text says, how wide it is and where it goes only changes once a minute, once a day,
+ * or when new weather arrives, so each line is laid out again only when its own key changes:
+ * the local minute for the time, the local day for the date, and the snapshot itself for the
+ * weather line.  A new time zone, new bounds or new dimensions lay out
+ * everything again.  Frames in between draw the text where it was last placed.
+ *
+ * In interactive mode, the background, the date and the weather line are drawn once into an
+ * offscreen layer whenever one of them is laid out again, and each frame only copies that layer
+ * and draws the time and the blinking colon over it.  Ambient mode draws the time on black and
+ * doesn't need the layer.
+ */
+class WatchFaceRenderer {
+
+    // Typefaces used
+    private static final Typeface NORMAL_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+    private static final Typeface BOLD_TYPEFACE = Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+    private static final long DAY_IN_MILLIS = 24 * 60 * MINUTE_IN_MILLIS;
+
+    private static final char[] COLON = {':'};
+
+    private final Context mContext;
+
+    // Calendar used to format the date, in the watch's time zone
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("EEE d MMM yyyy");
+    private TimeZone mTimeZone = TimeZone.getDefault();
+
+    private final Paint mBackgroundPaint;
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final Paint mDatePaint;
+    private final Paint mTempHighPaint;
+    private final Paint mTempLowPaint;
+    private final Paint mBitmapPaint = new Paint();
+
+    // dimensions
+    private float mTimeYOffset;
+    private float mTimeXSpace;
+    private float mColonWidth;
+    private float mDateYOffset;
+    private float mWeatherXSpace;
+    private float mWeatherYSpace;
+    private float mTempHighHeight;
+
+    // Bounds the layout was made for, -1 once it has to be redone
+    private int mLayoutWidth = -1;
+    private int mLayoutHeight = -1;
+    private float mTimeY;
+    private float mColonX;
+
+    // HH and MM, laid out again when the local minute changes
+    private final char[] mHour = new char[2];
+    private final char[] mMinute = new char[2];
+    private long mTimeMinute = Long.MIN_VALUE;
+    private float mHourX;
+    private float mMinuteX;
+
+    // Formatted and laid out again when the local day changes
+    private String mDate;
+    private long mDateDay = Long.MIN_VALUE;
+    private float mDateX;
+    private float mDateY;
+
+    // The weather line is laid out again when it's given another snapshot
+    private WeatherSnapshot mLaidOutWeather;
+    private float mSeparatorLeft;
+    private float mSeparatorRight;
+    private float mSeparatorY;
+    private float mWeatherBitmapX;
+    private float mWeatherBitmapY;
+    private float mTempHighX;
+    private float mTempLowX;
+    private float mTempY;
+
+    // Everything that doesn't change with the time, drawn again when it's no longer valid
+    private Bitmap mStaticLayer;
+    private final Canvas mStaticCanvas = new Canvas();
+    private boolean mStaticLayerValid;
+
+    WatchFaceRenderer(Context context) {
+        mContext = context;
+        Resources resources = context.getResources();
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(ContextCompat.getColor(context, R.color.background));
+
+        mHourPaint = createTextPaint(
+                ContextCompat.getColor(context, R.color.digital_text),
+                BOLD_TYPEFACE,
+                resources.getDimension(R.dimen.time_size));
+
+        mMinutePaint = createTextPaint(
+                ContextCompat.getColor(context, R.color.digital_text),
+                NORMAL_TYPEFACE,
+                resources.getDimension(R.dimen.time_size));
+
+        mDatePaint = createTextPaint(
+                ContextCompat.getColor(context, R.color.digital_text_light),
+                NORMAL_TYPEFACE,
+                resources.getDimension(R.dimen.date_size));
+
+        mTempHighPaint = createTextPaint(
+                ContextCompat.getColor(context, R.color.digital_text),
+                BOLD_TYPEFACE,
+                resources.getDimension(R.dimen.temperature_size));
+
+        mTempLowPaint = createTextPaint(
+                ContextCompat.getColor(context, R.color.digital_text_light),
+                NORMAL_TYPEFACE,
+                resources.getDimension(R.dimen.temperature_size));
+
+        loadDimensions();
+    }
+
+    private static Paint createTextPaint(int textColor, Typeface typeface, float textSize) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(typeface);
+        paint.setTextSize(textSize);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Loads the dimensions again, for resources that have alternate values for round watches.
+     */
+    void loadDimensions() {
+        Resources resources = mContext.getResources();
+
+        // Time line (middle one in this design)
+        mTimeYOffset = resources.getDimension(R.dimen.time_y_offset);
+        mTimeXSpace = resources.getDimension(R.dimen.time_x_space);
+        mColonWidth = mHourPaint.measureText(COLON, 0, 1);
+
+        // Date line (upper line)
+        mDateYOffset = resources.getDimension(R.dimen.date_y_offset);
+
+        // Weather line (bottom line)
+        mWeatherYSpace = resources.getDimension(R.dimen.weather_y_space);
+        mWeatherXSpace = resources.getDimension(R.dimen.weather_x_space);
+        mTempHighHeight = - mTempHighPaint.ascent();
+
+        mLayoutWidth = -1;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mCalendar.setTimeZone(timeZone);
+        mLayoutWidth = -1;
+    }
+
+    void setAmbient(boolean ambient, boolean lowBitAmbient) {
+        // On devices with low-bit ambient mode, the text is drawn without anti-aliasing
+        if (lowBitAmbient) {
+            mHourPaint.setAntiAlias(!ambient);
+            mMinutePaint.setAntiAlias(!ambient);
+        }
+    }
+
+    /**
+     * @param weather The weather to show, or null if none has been received yet
+     */
+    void draw(Canvas canvas, Rect bounds, long now, boolean ambient, WeatherSnapshot weather) {
+        // Local time, without going through the calendar
+        long localTime = now + mTimeZone.getOffset(now);
+        updateLayout(bounds, now, localTime, ambient, weather);
+
+        // Draw the background, and in interactive mode the date and weather along with it
+        if (ambient) {
+            canvas.drawColor(Color.BLACK);
+        } else {
+            if (!mStaticLayerValid) {
+                drawStaticLayer(bounds, weather);
+            }
+            canvas.drawBitmap(mStaticLayer, 0, 0, mBitmapPaint);
+        }
+
+        // Draw HH:MM in ambient mode / interactive mode.
+        canvas.drawText(mHour, 0, mHour.length, mHourX, mTimeY, mHourPaint);
+        canvas.drawText(mMinute, 0, mMinute.length, mMinuteX, mTimeY, mMinutePaint);
+
+        // Draw Colon (every half second in interactive mode)
+        if (ambient || (now % 1000) < 500) {
+            canvas.drawText(COLON, 0, 1, mColonX, mTimeY, mHourPaint);
+        }
+    }
+
+    /**
+     * Draws the background, the date and the weather line into the offscreen layer, which is
+     * only created again when the bounds change size.
+     */
+    private void drawStaticLayer(Rect bounds, WeatherSnapshot weather) {
+        if (mStaticLayer == null || mStaticLayer.getWidth() != bounds.width()
+                || mStaticLayer.getHeight() != bounds.height()) {
+            release();
+            mStaticLayer = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                    Bitmap.Config.ARGB_8888);
+            // The background covers it all, so it can be copied without blending
+            mStaticLayer.setHasAlpha(false);
+            mStaticCanvas.setBitmap(mStaticLayer);
+        }
+        Canvas canvas = mStaticCanvas;
+        canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+
+        // Top line: date
+        canvas.drawText(mDate, mDateX, mDateY, mDatePaint);
+
+        //
+        // Bottom line: weather info
+        //
+        // weather is only null if no weather data has been received at any point on the watch side.
+        //
+        // Weather data is sent on the app side by the SunshineSyncAdapter (every 3 hour, one way communication)
+        // or each time location is changed in the app settings (also useful for testing).
+        //
+        if (weather != null) {
+            // Separator line
+            canvas.drawLine(mSeparatorLeft, mSeparatorY, mSeparatorRight, mSeparatorY,
+                    mTempLowPaint);
+
+            // left: weather bitmap
+            canvas.drawBitmap(weather.bitmap, mWeatherBitmapX, mWeatherBitmapY, mBitmapPaint);
+
+            // middle: temp high
+            canvas.drawText(weather.tempHigh, mTempHighX, mTempY, mTempHighPaint);
+
+            // right: temp low
+            canvas.drawText(weather.tempLow, mTempLowX, mTempY, mTempLowPaint);
+        }
+        mStaticLayerValid = true;
+    }
+
+    /**
+     * Frees the offscreen layer.  It's created again by the next interactive frame.
+     */
+    void release() {
+        if (mStaticLayer != null) {
+            mStaticCanvas.setBitmap(null);
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+        }
+        mStaticLayerValid = false;
+    }
+
+    /**
+     * Lays out again whatever has changed since the last frame.
+     */
+    private void updateLayout(Rect bounds, long now, long localTime, boolean ambient,
+                              WeatherSnapshot weather) {
+        if (bounds.width() != mLayoutWidth || bounds.height() != mLayoutHeight) {
+            mLayoutWidth = bounds.width();
+            mLayoutHeight = bounds.height();
+            mTimeY = bounds.centerY() + mTimeYOffset;
+            mColonX = bounds.centerX() - mColonWidth / 2;
+            mTimeMinute = Long.MIN_VALUE;
+            mDateDay = Long.MIN_VALUE;
+            mLaidOutWeather = null;
+            mStaticLayerValid = false;
+        }
+
+        long minute = localTime / MINUTE_IN_MILLIS;
+        if (minute != mTimeMinute) {
+            mTimeMinute = minute;
+            int minuteOfDay = (int) (minute % (24 * 60));
+            formatTwoDigits(minuteOfDay / 60, mHour);
+            formatTwoDigits(minuteOfDay % 60, mMinute);
+            float hourWidth = mHourPaint.measureText(mHour, 0, mHour.length);
+            mHourX = bounds.centerX() - hourWidth - mTimeXSpace - mColonWidth / 2;
+            mMinuteX = bounds.centerX() + mColonWidth / 2 + mTimeXSpace;
+        }
+
+        // The rest is only drawn in interactive mode
+        if (ambient) {
+            return;
+        }
+
+        long day = localTime / DAY_IN_MILLIS;
+        if (day != mDateDay) {
+            mDateDay = day;
+            mCalendar.setTimeInMillis(now);
+            mDate = mDateFormat.format(mCalendar.getTime());
+            mDateX = bounds.centerX() - mDatePaint.measureText(mDate) / 2;
+            mDateY = bounds.centerY() + mDateYOffset;
+            mStaticLayerValid = false;
+        }
+
+        if (weather != mLaidOutWeather) {
+            mLaidOutWeather = weather;
+            mStaticLayerValid = false;
+            if (weather == null) {
+                return;
+            }
+
+            float x = 1.25f * mWeatherXSpace;
+            mSeparatorLeft = bounds.centerX() - x;
+            mSeparatorRight = bounds.centerX() + x;
+            mSeparatorY = bounds.centerY() + mWeatherYSpace;
+
+            float bitmapWidth = weather.bitmap.getWidth();
+            float bitmapHeight = weather.bitmap.getHeight();
+            float tempHighWidth = mTempHighPaint.measureText(weather.tempHigh);
+            float tempLowWidth = mTempHighPaint.measureText(weather.tempLow);
+            float weatherWidth = bitmapWidth + tempHighWidth + tempLowWidth + 2 * mWeatherXSpace;
+            mWeatherBitmapX = bounds.centerX() - weatherWidth / 2;
+            mWeatherBitmapY = bounds.centerY() + mWeatherYSpace;
+            mTempHighX = mWeatherBitmapX + bitmapWidth + mWeatherXSpace;
+            mTempLowX = mTempHighX + tempHighWidth + mWeatherXSpace;
+            mTempY = mWeatherBitmapY + bitmapHeight / 2 + mTempHighHeight / 2;
+        }
+    }
+
+    /**
+     * Writes a number from 0 to 99 as two digits.
+     */
+    static void formatTwoDigits(int value, char[] out) {
+        out[0] = (char) ('0' + value / 10);
+        out[1] = (char) ('0' + value % 10);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.google.android.gms.wearable.DataMap;
+
+/**
+ * The weather sent by the phone, ready to be drawn: the condition bitmap is decoded and the
+ * temperatures are formatted.  Never modified, so a new one can be handed to the drawing thread
+ * with a single reference swap, and a frame never sees half of an update.
+ */
+final class WeatherSnapshot {
+
+    // Weather DataItem keywords
+    static final String PATH_SUNSHINE_WEATHER = "/Sunshine/Weather";
+    private static final String WEATHER_TIMESTAMP = "WEATHER_TIMESTAMP";
+    private static final String CITY_NAME = "CITY_NAME";
+    private static final String WEATHER_ID = "WEATHER_ID";
+    private static final String TEMP_MAX = "TEMP_MAX";
+    private static final String TEMP_MIN = "TEMP_MIN";
+
+    // Sign, digits and degree sign of any temperature we'll ever show
+    private static final int MAX_TEMPERATURE_LENGTH = 8;
+
+    final long timestamp;
+    final String cityName;
+    final int weatherId;
+    final Bitmap bitmap;
+    final String tempHigh;
+    final String tempLow;
+
+    private WeatherSnapshot(long timestamp, String cityName, int weatherId, Bitmap bitmap,
+                            String tempHigh, String tempLow) {
+        this.timestamp = timestamp;
+        this.cityName = cityName;
+        this.weatherId = weatherId;
+        this.bitmap = bitmap;
+        this.tempHigh = tempHigh;
+        this.tempLow = tempLow;
+    }
+
+    /**
+     * Reads the weather from the data item the phone sent.  Decodes a bitmap, so don't call
+     * this from the UI thread.
+     *
+     * @param previous The snapshot being replaced, whose bitmap is reused for the same condition
+     */
+    static WeatherSnapshot fromDataMap(Resources resources, DataMap dataMap,
+                                       WeatherSnapshot previous) {
+        return create(resources,
+                dataMap.getLong(WEATHER_TIMESTAMP),
+                dataMap.getString(CITY_NAME),
+                dataMap.getInt(WEATHER_ID),
+                dataMap.getDouble(TEMP_MAX),
+                dataMap.getDouble(TEMP_MIN),
+                previous);
+    }
+
+    static WeatherSnapshot create(Resources resources, long timestamp, String cityName,
+                                  int weatherId, double tempMax, double tempMin,
+                                  WeatherSnapshot previous) {
+        int bitmapId = getWeatherBitmapId(weatherId);
+        Bitmap bitmap = previous != null && getWeatherBitmapId(previous.weatherId) == bitmapId
+                ? previous.bitmap : BitmapFactory.decodeResource(resources, bitmapId);
+
+        char[] buffer = new char[MAX_TEMPERATURE_LENGTH];
+        String tempHigh = new String(buffer, 0, formatTemperature(tempMax, buffer));
+        String tempLow = new String(buffer, 0, formatTemperature(tempMin, buffer));
+        return new WeatherSnapshot(timestamp, cityName, weatherId, bitmap, tempHigh, tempLow);
+    }
+
+    /**
+     * Writes a temperature rounded to a whole degree, followed by a degree sign.
+     *
+     * @return the number of chars written
+     */
+    static int formatTemperature(double temperature, char[] out) {
+        long rounded = Math.round(Math.abs(temperature));
+        int length = 0;
+        if (temperature < 0 && rounded != 0) {
+            out[length++] = '-';
+        }
+        // Digits go in backwards, then get reversed
+        int start = length;
+        do {
+            out[length++] = (char) ('0' + rounded % 10);
+            rounded /= 10;
+        } while (rounded > 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            char digit = out[i];
+            out[i] = out[j];
+            out[j] = digit;
+        }
+        out[length++] = '°';
+        return length;
+    }
+
+    static int getWeatherBitmapId(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return R.drawable.ic_storm;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return R.drawable.ic_light_rain;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return R.drawable.ic_rain;
+        } else if (weatherId == 511) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return R.drawable.ic_rain;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return R.drawable.ic_snow;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return R.drawable.ic_fog;
+        } else if (weatherId == 761 || weatherId == 781) {
+            return R.drawable.ic_storm;
+        } else if (weatherId == 800) {
+            return R.drawable.ic_clear;
+        } else if (weatherId == 801) {
+            return R.drawable.ic_light_clouds;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return R.drawable.ic_cloudy;
+        }
+        return R.drawable.ic_unknown;
+    }
+
+    @Override
+    public String toString() {
+        return "WeatherSnapshot{timestamp=" + timestamp + ", city=" + cityName
+                + ", weatherId=" + weatherId + ", high=" + tempHigh + ", low=" + tempLow + "}";
+    }
+}